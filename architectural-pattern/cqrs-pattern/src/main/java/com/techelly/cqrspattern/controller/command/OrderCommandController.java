@@ -6,6 +6,7 @@ import org.springframework.web.bind.annotation.*;
 
 import com.techelly.cqrspattern.dto.OrderCommandDto;
 import com.techelly.cqrspattern.service.OrderCommandService;
+import com.techelly.cqrspattern.service.PurchaseOrderSummaryProjector;
 
 @RestController
 @RequestMapping("po")
@@ -15,6 +16,9 @@ public class OrderCommandController {
     @Autowired
     private OrderCommandService orderCommandService;
 
+    @Autowired
+    private PurchaseOrderSummaryProjector summaryProjector;
+
     @PostMapping("/sale")
     public void placeOrder(@RequestBody OrderCommandDto dto){
         this.orderCommandService.createOrder(dto.getUserIndex(), dto.getProductIndex());
@@ -24,4 +28,10 @@ public class OrderCommandController {
     public void cancelOrder(@PathVariable long orderId){
         this.orderCommandService.cancelOrder(orderId);
     }
+
+    // repairs the summary after it drifted, it is kept up to date from the orders otherwise
+    @PostMapping("/summary/rebuild")
+    public void rebuildSummary(){
+        this.summaryProjector.rebuild();
+    }
 }
@@ -0,0 +1,21 @@
+package com.techelly.cqrspattern.event;
+
+// the change of the total sale of a state caused by one order, positive for an order placed, negative for a cancellation
+public class SaleDeltaEvent {
+
+    private final String state;
+    private final double amount;
+
+    public SaleDeltaEvent(String state, double amount) {
+        this.state = state;
+        this.amount = amount;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public double getAmount() {
+        return amount;
+    }
+}
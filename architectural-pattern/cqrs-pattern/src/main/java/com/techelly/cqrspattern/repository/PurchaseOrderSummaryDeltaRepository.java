@@ -0,0 +1,10 @@
+package com.techelly.cqrspattern.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import com.techelly.cqrspattern.entity.PurchaseOrderSummaryDelta;
+
+@Repository
+public interface PurchaseOrderSummaryDeltaRepository extends JpaRepository<PurchaseOrderSummaryDelta, Long> {
+}
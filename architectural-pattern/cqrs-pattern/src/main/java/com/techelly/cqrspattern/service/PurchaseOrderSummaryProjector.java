@@ -0,0 +1,114 @@
+package com.techelly.cqrspattern.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.techelly.cqrspattern.entity.PurchaseOrderSummaryDelta;
+import com.techelly.cqrspattern.event.SaleDeltaEvent;
+import com.techelly.cqrspattern.repository.PurchaseOrderSummaryDeltaRepository;
+
+import javax.annotation.PostConstruct;
+import javax.transaction.Transactional;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Keeps purchase_order_summary up to date from the sale deltas of the orders, instead of recomputing it.
+ * Every delta is written to purchase_order_summary_delta in the transaction of its order, so it commits or rolls back
+ * with the order. Every flush-interval the deltas are taken off that table batch-size rows at a time, summed per state
+ * and written with one batched upsert in the same transaction. The cost follows the number of orders written, not
+ * the size of the tables, and the summary lags by about the interval.
+ * purchase_order_summary is a table now. Where it still is the materialized view, run db/purchase_order_summary.sql once,
+ * it drops the view, creates both tables and fills the summary the way rebuild does.
+ */
+@Component
+public class PurchaseOrderSummaryProjector {
+
+    private static final String DRAIN = "delete from purchase_order_summary_delta where id in (" +
+            "select id from purchase_order_summary_delta order by id limit ? for update skip locked) " +
+            "returning state, amount";
+
+    private static final String UPSERT = "insert into purchase_order_summary(state, total_sale) values (?, ?) " +
+            "on conflict (state) do update set total_sale = purchase_order_summary.total_sale + excluded.total_sale";
+
+    private static final String REBUILD = "insert into purchase_order_summary(state, total_sale) " +
+            "select u.state, sum(p.price) from purchase_order po " +
+            "join users u on u.id = po.user_id " +
+            "join product p on p.id = po.product_id " +
+            "group by u.state";
+
+    @Value("${app.summary.batch-size:1000}")
+    private int batchSize;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PurchaseOrderSummaryDeltaRepository deltaRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private TransactionTemplate transactionTemplate;
+
+    @PostConstruct
+    private void init(){
+        this.transactionTemplate = new TransactionTemplate(this.transactionManager);
+    }
+
+    // runs inside the transaction of the order, a rolled back order leaves no delta
+    @EventListener
+    @Transactional(Transactional.TxType.MANDATORY)
+    public void on(SaleDeltaEvent event){
+        PurchaseOrderSummaryDelta delta = new PurchaseOrderSummaryDelta();
+        delta.setState(event.getState());
+        delta.setAmount(event.getAmount());
+        this.deltaRepository.save(delta);
+    }
+
+    @Scheduled(fixedDelayString = "${app.summary.flush-interval:50}")
+    public void flush(){
+        Integer drained;
+        do {
+            drained = this.transactionTemplate.execute(status -> this.flushBatch());
+        } while(drained != null && drained == this.batchSize);
+    }
+
+    /*
+     * Repair job: recomputes the whole summary from the orders. The lock waits for the orders still writing a delta
+     * and holds back new ones until the recompute committed, so the dropped deltas are exactly the ones it counts.
+     */
+    public void rebuild(){
+        this.transactionTemplate.executeWithoutResult(status -> {
+            this.jdbcTemplate.execute("lock table purchase_order_summary_delta in exclusive mode");
+            this.jdbcTemplate.update("delete from purchase_order_summary_delta");
+            this.jdbcTemplate.update("delete from purchase_order_summary");
+            this.jdbcTemplate.update(REBUILD);
+        });
+    }
+
+    // the deltas are deleted and applied in one transaction, a failed upsert keeps them for the next flush
+    private int flushBatch(){
+        Map<String, Double> deltas = new HashMap<>();
+        int[] drained = new int[1];
+        this.jdbcTemplate.query(DRAIN, rs -> {
+            deltas.merge(rs.getString("state"), rs.getDouble("amount"), Double::sum);
+            drained[0]++;
+        }, this.batchSize);
+        if(deltas.isEmpty())
+            return 0;
+        List<Object[]> rows = new ArrayList<>(deltas.size());
+        deltas.forEach((state, amount) -> rows.add(new Object[]{state, amount}));
+        this.jdbcTemplate.batchUpdate(UPSERT, rows);
+        return drained[0];
+    }
+
+}
@@ -1,21 +1,27 @@
 package com.techelly.cqrspattern.service.impl;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 
 import com.techelly.cqrspattern.entity.Product;
 import com.techelly.cqrspattern.entity.PurchaseOrder;
 import com.techelly.cqrspattern.entity.User;
+import com.techelly.cqrspattern.event.SaleDeltaEvent;
 import com.techelly.cqrspattern.repository.ProductRepository;
 import com.techelly.cqrspattern.repository.PurchaseOrderRepository;
 import com.techelly.cqrspattern.repository.UserRepository;
 import com.techelly.cqrspattern.service.OrderCommandService;
 
 import javax.annotation.PostConstruct;
+import javax.transaction.Transactional;
 import java.time.Duration;
 import java.time.LocalDate;
 import java.time.ZoneId;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class OrderCommandServiceImpl implements OrderCommandService {
@@ -31,30 +37,45 @@ public class OrderCommandServiceImpl implements OrderCommandService {
     @Autowired
     private PurchaseOrderRepository purchaseOrderRepository;
 
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
     private List<User> users;
     private List<Product> products;
+    private Map<Long, User> usersById;
+    private Map<Long, Product> productsById;
 
     @PostConstruct
     private void init(){
         this.users = this.userRepository.findAll();
         this.products = this.productRepository.findAll();
+        this.usersById = this.users.stream().collect(Collectors.toMap(User::getId, Function.identity()));
+        this.productsById = this.products.stream().collect(Collectors.toMap(Product::getId, Function.identity()));
     }
 
     @Override
+    @Transactional
     public void createOrder(int userIndex, int productIndex) {
+        User user = this.users.get(userIndex);
+        Product product = this.products.get(productIndex);
         PurchaseOrder purchaseOrder = new PurchaseOrder();
-        purchaseOrder.setProductId(this.products.get(productIndex).getId());
-        purchaseOrder.setUserId(this.users.get(userIndex).getId());
+        purchaseOrder.setProductId(product.getId());
+        purchaseOrder.setUserId(user.getId());
         this.purchaseOrderRepository.save(purchaseOrder);
+        this.eventPublisher.publishEvent(new SaleDeltaEvent(user.getState(), product.getPrice()));
     }
 
     @Override
+    @Transactional
     public void cancelOrder(long orderId) {
         this.purchaseOrderRepository.findById(orderId)
                 .ifPresent(purchaseOrder -> {
                     LocalDate orderDate = LocalDate.ofInstant(purchaseOrder.getOrderDate().toInstant(), ZoneId.systemDefault());
                     if(Duration.between(orderDate, LocalDate.now()).toDays() <= ORDER_CANCELLATION_WINDOW){
                         this.purchaseOrderRepository.deleteById(orderId);
+                        this.eventPublisher.publishEvent(new SaleDeltaEvent(
+                                this.usersById.get(purchaseOrder.getUserId()).getState(),
+                                -this.productsById.get(purchaseOrder.getProductId()).getPrice()));
                         //additional logic to issue refund
                     }
                 });
@@ -0,0 +1,36 @@
+-- Replaces the materialized view purchase_order_summary by the tables PurchaseOrderSummaryProjector keeps up to date.
+-- Run it once with the application stopped, e.g. psql -d iengdb -f purchase_order_summary.sql
+-- The last statements are the rebuild of the projector, so the summary starts out right.
+
+BEGIN;
+
+DROP PROCEDURE IF EXISTS refresh_mat_view();
+
+DO $$
+BEGIN
+    IF EXISTS (SELECT 1 FROM pg_matviews WHERE matviewname = 'purchase_order_summary') THEN
+        DROP MATERIALIZED VIEW purchase_order_summary;
+    END IF;
+END $$;
+
+CREATE TABLE IF NOT EXISTS purchase_order_summary(
+    state VARCHAR (255) PRIMARY KEY,
+    total_sale FLOAT8
+);
+
+CREATE TABLE IF NOT EXISTS purchase_order_summary_delta(
+    id BIGSERIAL PRIMARY KEY,
+    state VARCHAR (255),
+    amount FLOAT8
+);
+
+LOCK TABLE purchase_order_summary_delta IN EXCLUSIVE MODE;
+DELETE FROM purchase_order_summary_delta;
+DELETE FROM purchase_order_summary;
+INSERT INTO purchase_order_summary(state, total_sale)
+SELECT u.state, SUM(p.price) FROM purchase_order po
+JOIN users u ON u.id = po.user_id
+JOIN product p ON p.id = po.product_id
+GROUP BY u.state;
+
+COMMIT;
@@ -0,0 +1,145 @@
+package com.techelly.cqrspattern.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.util.TestPropertyValues;
+import org.springframework.context.ApplicationContextInitializer;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.support.EncodedResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import com.techelly.cqrspattern.event.SaleDeltaEvent;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+/*
+ * Runs against a Postgres container which starts out with the old materialized view. The migration script runs before
+ * the application starts, and the entities are validated against the tables it created.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+@SpringBootTest(properties = {
+		"spring.jpa.hibernate.ddl-auto=validate",
+		"app.summary.flush-interval=3600000",
+		"app.summary.batch-size=2"})
+@ContextConfiguration(initializers = PurchaseOrderSummaryProjectorTests.Migration.class)
+class PurchaseOrderSummaryProjectorTests {
+
+	private static final String RECOMPUTE = "select u.state, sum(p.price) as total_sale from purchase_order po " +
+			"join users u on u.id = po.user_id " +
+			"join product p on p.id = po.product_id " +
+			"group by u.state";
+
+	@Container
+	static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:12")
+			.withInitScript("legacy-schema.sql");
+
+	@Autowired
+	private PurchaseOrderSummaryProjector projector;
+
+	@Autowired
+	private OrderCommandService orderCommandService;
+
+	@Autowired
+	private ApplicationEventPublisher eventPublisher;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	static class Migration implements ApplicationContextInitializer<ConfigurableApplicationContext> {
+
+		@Override
+		public void initialize(ConfigurableApplicationContext context) {
+			try (Connection connection = DriverManager.getConnection(POSTGRES.getJdbcUrl(), POSTGRES.getUsername(), POSTGRES.getPassword())) {
+				// one statement, the script has its own transaction and a do block
+				ScriptUtils.executeSqlScript(connection, new EncodedResource(new ClassPathResource("db/purchase_order_summary.sql")),
+						false, false, ScriptUtils.DEFAULT_COMMENT_PREFIX, ScriptUtils.EOF_STATEMENT_SEPARATOR,
+						ScriptUtils.DEFAULT_BLOCK_COMMENT_START_DELIMITER, ScriptUtils.DEFAULT_BLOCK_COMMENT_END_DELIMITER);
+			} catch (SQLException e) {
+				throw new IllegalStateException(e);
+			}
+			TestPropertyValues.of(
+					"spring.datasource.url=" + POSTGRES.getJdbcUrl(),
+					"spring.datasource.username=" + POSTGRES.getUsername(),
+					"spring.datasource.password=" + POSTGRES.getPassword()
+			).applyTo(context.getEnvironment());
+		}
+
+	}
+
+	private Map<String, Double> summary() {
+		return this.rows("select state, total_sale from purchase_order_summary");
+	}
+
+	private int pendingDeltas() {
+		return this.jdbcTemplate.queryForObject("select count(*) from purchase_order_summary_delta", Integer.class);
+	}
+
+	private Map<String, Double> rows(String sql) {
+		Map<String, Double> rows = new TreeMap<>();
+		this.jdbcTemplate.query(sql, rs -> {
+			rows.put(rs.getString("state"), rs.getDouble("total_sale"));
+		});
+		return rows;
+	}
+
+	@Test
+	void migrationFillsTheSummaryFromTheOrders() {
+		this.projector.flush();
+		assertEquals(this.rows(RECOMPUTE), this.summary());
+	}
+
+	@Test
+	void flushAppliesTheDeltasOfCommittedOrders() {
+		this.projector.flush();
+		Map<String, Double> before = this.summary();
+
+		for(int i = 0; i < 5; i++)
+			this.orderCommandService.createOrder(i % 3, i % 2);
+		// rolled back with its transaction, so it never reaches the summary
+		new TransactionTemplate(this.transactionManager).executeWithoutResult(status -> {
+			this.eventPublisher.publishEvent(new SaleDeltaEvent("NY", 1_000.0));
+			status.setRollbackOnly();
+		});
+		assertEquals(5, this.pendingDeltas());
+
+		// batch-size is 2, so this takes three batches
+		this.projector.flush();
+
+		assertEquals(0, this.pendingDeltas());
+		assertNotEquals(before, this.summary());
+		assertEquals(this.rows(RECOMPUTE), this.summary());
+	}
+
+	@Test
+	void rebuildRecomputesTheSummaryAndDropsPendingDeltas() {
+		this.jdbcTemplate.update("update purchase_order_summary set total_sale = -1");
+		new TransactionTemplate(this.transactionManager).executeWithoutResult(status ->
+				this.eventPublisher.publishEvent(new SaleDeltaEvent("CA", 42.0)));
+
+		this.projector.rebuild();
+
+		assertEquals(0, this.pendingDeltas());
+		assertEquals(this.rows(RECOMPUTE), this.summary());
+	}
+
+}
@@ -0,0 +1,16 @@
+-- the schema as it was before purchase_order_summary became a table, with a few orders
+CREATE TABLE users(id BIGSERIAL PRIMARY KEY, firstname VARCHAR (255), lastname VARCHAR (255), state VARCHAR (255));
+CREATE TABLE product(id BIGSERIAL PRIMARY KEY, description VARCHAR (255), price FLOAT8 NOT NULL);
+CREATE TABLE purchase_order(id BIGSERIAL PRIMARY KEY, user_id INT8, product_id INT8, order_date TIMESTAMP);
+
+INSERT INTO users(firstname, lastname, state) VALUES ('Ann', 'Lee', 'CA'), ('Bob', 'Ray', 'CA'), ('Cid', 'Moe', 'NY');
+INSERT INTO product(description, price) VALUES ('Product1', 100), ('Product2', 250);
+INSERT INTO purchase_order(user_id, product_id, order_date) VALUES (1, 1, now()), (1, 2, now()), (2, 1, now()), (3, 2, now());
+
+CREATE MATERIALIZED VIEW purchase_order_summary AS
+SELECT u.state, SUM(p.price) AS total_sale FROM purchase_order po
+JOIN users u ON u.id = po.user_id
+JOIN product p ON p.id = po.product_id
+GROUP BY u.state;
+
+CREATE PROCEDURE refresh_mat_view() LANGUAGE SQL AS 'REFRESH MATERIALIZED VIEW purchase_order_summary';
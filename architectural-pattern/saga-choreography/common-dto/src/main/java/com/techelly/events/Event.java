@@ -1,11 +1,11 @@
 package com.techelly.events;
 
-import java.util.Date;
+import java.time.Instant;
 import java.util.UUID;
 
 public interface Event {
 
     UUID getEventId();
-    Date getDate();
+    Instant getDate();
 
 }
@@ -0,0 +1,233 @@
+package com.techelly.events;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/*
+ * Recognises redelivered events by their id before any work is done for them.
+ * A bloom filter answers most lookups: an id it has not seen is new for sure. The filter has two generations which
+ * share the memory budget, a new one replaces the oldest every window, so an id is remembered between one and two windows.
+ * When the filter has seen an id, a small exact LRU confirms it. An id the LRU does not know any more is processed again,
+ * so a false positive of the filter never drops an event.
+ * An event is claimed in the LRU before its work runs, so a copy delivered meanwhile is dropped instead of running too.
+ * Ids are marked once their event was processed, a failure releases the claim and a retry is not taken for a duplicate.
+ * The LRU is split into stripes by id, each with its own lock, so consumer threads rarely wait for each other.
+ * events.dedupe counts the lookups by result: new, unconfirmed (filter hit, LRU miss) and duplicate.
+ */
+public class EventDeduplicator {
+
+    private static final int HASHES = 4;
+    private static final int STRIPES = 16;
+
+    private final int words;
+    private final long windowNanos;
+    private final AtomicReference<Generations> generations;
+    private final Recent[] recent;
+    private final Counter fresh;
+    private final Counter unconfirmed;
+    private final Counter duplicates;
+
+    public EventDeduplicator(String name, long memoryBytes, Duration window, int lruSize, MeterRegistry registry) {
+        this.words = (int) Math.max(1, memoryBytes / 2 / Long.BYTES);
+        this.windowNanos = window.toNanos();
+        long now = System.nanoTime();
+        this.generations = new AtomicReference<>(new Generations(new AtomicLongArray(this.words), new AtomicLongArray(this.words), now));
+        this.recent = new Recent[STRIPES];
+        for(int i = 0; i < STRIPES; i++)
+            this.recent[i] = new Recent(Math.max(1, lruSize / STRIPES));
+        this.fresh = this.counter(registry, name, "new");
+        this.unconfirmed = this.counter(registry, name, "unconfirmed");
+        this.duplicates = this.counter(registry, name, "duplicate");
+    }
+
+    public boolean isDuplicate(final UUID eventId) {
+        if(eventId == null)
+            return false;
+        if(!this.seen(eventId)){
+            this.fresh.increment();
+            return false;
+        }
+        if(this.recent(eventId).state(eventId) == null){
+            this.unconfirmed.increment();
+            return false;
+        }
+        this.duplicates.increment();
+        return true;
+    }
+
+    /*
+     * Claims the event for processing, false when it was processed already or another copy is being processed.
+     * A claimed event must be marked processed or released.
+     */
+    public boolean claim(final UUID eventId) {
+        if(eventId == null)
+            return true;
+        boolean seen = this.seen(eventId);
+        if(!this.recent(eventId).claim(eventId)){
+            this.duplicates.increment();
+            return false;
+        }
+        (seen ? this.unconfirmed : this.fresh).increment();
+        return true;
+    }
+
+    // gives up a claim after the work failed, so a redelivery runs it again
+    public void release(final UUID eventId) {
+        if(eventId != null)
+            this.recent(eventId).release(eventId);
+    }
+
+    /*
+     * Runs the work unless the event was processed already, and marks it once the work succeeded.
+     * Claimed on subscription, so a redelivery queued behind the original sees it marked.
+     */
+    public <R> Mono<R> processOnce(final UUID eventId, final Supplier<Mono<R>> work) {
+        return Mono.defer(() -> this.claim(eventId)
+                ? work.get()
+                    .doOnSuccess(result -> this.markProcessed(eventId))
+                    .doOnError(ex -> this.release(eventId))
+                    .doOnCancel(() -> this.release(eventId))
+                : Mono.<R>empty());
+    }
+
+    // the blocking form of the above, false when the event was dropped as a duplicate
+    public boolean processOnce(final UUID eventId, final Runnable work) {
+        if(!this.claim(eventId))
+            return false;
+        try {
+            work.run();
+        } catch (RuntimeException ex) {
+            this.release(eventId);
+            throw ex;
+        }
+        this.markProcessed(eventId);
+        return true;
+    }
+
+    public void markProcessed(final UUID eventId) {
+        if(eventId == null)
+            return;
+        Generations current = this.rotate();
+        long h1 = mix(eventId.getMostSignificantBits() ^ eventId.getLeastSignificantBits());
+        long h2 = mix(h1 ^ eventId.getLeastSignificantBits());
+        AtomicLongArray bits = current.current;
+        for(int i = 0; i < HASHES; i++){
+            long bit = Math.floorMod(h1 + i * h2, (long) bits.length() * Long.SIZE);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            if((bits.get(word) & mask) == 0)
+                bits.getAndAccumulate(word, mask, (value, m) -> value | m);
+        }
+        this.recent(eventId).processed(eventId);
+    }
+
+    private boolean seen(final UUID eventId) {
+        Generations current = this.rotate();
+        long h1 = mix(eventId.getMostSignificantBits() ^ eventId.getLeastSignificantBits());
+        long h2 = mix(h1 ^ eventId.getLeastSignificantBits());
+        return contains(current.current, h1, h2) || contains(current.previous, h1, h2);
+    }
+
+    private Recent recent(final UUID eventId) {
+        return this.recent[(int) ((eventId.getMostSignificantBits() ^ eventId.getLeastSignificantBits()) & (STRIPES - 1))];
+    }
+
+    // the generation older than a window is replaced by an empty one, both are after two quiet windows
+    private Generations rotate() {
+        Generations current = this.generations.get();
+        long now = System.nanoTime();
+        if(now - current.startedAt < this.windowNanos)
+            return current;
+        AtomicLongArray previous = now - current.startedAt < 2 * this.windowNanos ? current.current : new AtomicLongArray(this.words);
+        Generations next = new Generations(new AtomicLongArray(this.words), previous, now);
+        return this.generations.compareAndSet(current, next) ? next : this.generations.get();
+    }
+
+    private static boolean contains(final AtomicLongArray bits, final long h1, final long h2) {
+        for(int i = 0; i < HASHES; i++){
+            long bit = Math.floorMod(h1 + i * h2, (long) bits.length() * Long.SIZE);
+            if((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    // the finalizer of murmur3, spreads the bits of the id over the whole long
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private Counter counter(final MeterRegistry registry, final String name, final String result) {
+        return Counter.builder("events.dedupe")
+                .tag("name", name)
+                .tag("result", result)
+                .register(registry);
+    }
+
+    private enum State { RUNNING, PROCESSED }
+
+    // one stripe of the LRU, in access order
+    private static final class Recent extends LinkedHashMap<UUID, State> {
+
+        private final int capacity;
+
+        private Recent(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        private synchronized State state(final UUID eventId) {
+            return this.get(eventId);
+        }
+
+        private synchronized boolean claim(final UUID eventId) {
+            if(this.get(eventId) != null)
+                return false;
+            this.put(eventId, State.RUNNING);
+            return true;
+        }
+
+        private synchronized void release(final UUID eventId) {
+            this.remove(eventId, State.RUNNING);
+        }
+
+        private synchronized void processed(final UUID eventId) {
+            this.put(eventId, State.PROCESSED);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, State> eldest) {
+            return this.size() > this.capacity;
+        }
+
+    }
+
+    private static final class Generations {
+
+        private final AtomicLongArray current;
+        private final AtomicLongArray previous;
+        private final long startedAt;
+
+        private Generations(AtomicLongArray current, AtomicLongArray previous, long startedAt) {
+            this.current = current;
+            this.previous = previous;
+            this.startedAt = startedAt;
+        }
+
+    }
+
+}
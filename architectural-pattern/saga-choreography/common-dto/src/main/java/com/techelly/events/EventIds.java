@@ -0,0 +1,55 @@
+package com.techelly.events;
+
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+
+/*
+ * Time ordered event ids laid out like a UUIDv7.
+ * 48 bits of epoch millis, the version, a 12 bit sequence, the variant and 62 random bits.
+ * Every thread keeps its own clock and sequence, so ids of one thread are strictly increasing and no lock is taken.
+ * The random bits come from ThreadLocalRandom. Event ids only have to be unique, not unpredictable, so SecureRandom is not needed.
+ */
+public final class EventIds {
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final int MAX_SEQUENCE = (1 << SEQUENCE_BITS) - 1;
+    private static final long VERSION = 0x7000L;
+    private static final long VARIANT = 0x8000_0000_0000_0000L;
+    private static final long RANDOM_MASK = 0x3FFF_FFFF_FFFF_FFFFL;
+
+    private static final ThreadLocal<State> STATE = ThreadLocal.withInitial(State::new);
+
+    private EventIds() {
+    }
+
+    public static UUID next() {
+        State state = STATE.get();
+        long now = System.currentTimeMillis();
+        if(now > state.millis){
+            state.millis = now;
+            // start low in the sequence, which leaves room for a burst within the same milli
+            state.sequence = ThreadLocalRandom.current().nextInt(MAX_SEQUENCE >> 1);
+        }else if(++state.sequence > MAX_SEQUENCE){
+            // the sequence of this milli is used up (or the clock went back), borrow the next milli
+            state.millis++;
+            state.sequence = 0;
+        }
+        long msb = (state.millis << 16) | VERSION | state.sequence;
+        long lsb = VARIANT | (ThreadLocalRandom.current().nextLong() & RANDOM_MASK);
+        return new UUID(msb, lsb);
+    }
+
+    // the instant embedded in an id created by next()
+    public static Instant timestamp(final UUID eventId) {
+        return Instant.ofEpochMilli(eventId.getMostSignificantBits() >>> 16);
+    }
+
+    private static final class State {
+
+        private long millis;
+        private int sequence;
+
+    }
+
+}
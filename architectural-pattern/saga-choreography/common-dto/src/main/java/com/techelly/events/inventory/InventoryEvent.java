@@ -2,24 +2,28 @@ package com.techelly.events.inventory;
 
 import com.techelly.dto.InventoryDto;
 import com.techelly.events.Event;
+import com.techelly.events.EventIds;
 
 import lombok.Data;
 
-import java.util.Date;
+import java.time.Instant;
 import java.util.UUID;
 
 @Data
 public class InventoryEvent implements Event {
 
-    private final UUID eventId = UUID.randomUUID();
-    private final Date date = new Date();
+    private UUID eventId;
+    private Instant date;
     private InventoryDto inventory;
     private InventoryStatus status;
 
+    // used by deserialization, which keeps the id and date of the original event
     public InventoryEvent() {
     }
 
     public InventoryEvent(InventoryDto inventory, InventoryStatus status) {
+        this.eventId = EventIds.next();
+        this.date = EventIds.timestamp(this.eventId);
         this.inventory = inventory;
         this.status = status;
     }
@@ -30,7 +34,7 @@ public class InventoryEvent implements Event {
     }
 
     @Override
-    public Date getDate() {
+    public Instant getDate() {
         return this.date;
     }
 
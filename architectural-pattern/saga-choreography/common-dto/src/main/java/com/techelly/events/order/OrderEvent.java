@@ -2,24 +2,28 @@ package com.techelly.events.order;
 
 import com.techelly.dto.PurchaseOrderDto;
 import com.techelly.events.Event;
+import com.techelly.events.EventIds;
 
 import lombok.Data;
 
-import java.util.Date;
+import java.time.Instant;
 import java.util.UUID;
 
 @Data
 public class OrderEvent implements Event {
 
-    private final UUID eventId = UUID.randomUUID();
-    private final Date date = new Date();
+    private UUID eventId;
+    private Instant date;
     private PurchaseOrderDto purchaseOrder;
     private OrderStatus orderStatus;
 
+    // used by deserialization, which keeps the id and date of the original event
     public OrderEvent() {
     }
 
     public OrderEvent(PurchaseOrderDto purchaseOrder, OrderStatus orderStatus) {
+        this.eventId = EventIds.next();
+        this.date = EventIds.timestamp(this.eventId);
         this.purchaseOrder = purchaseOrder;
         this.orderStatus = orderStatus;
     }
@@ -30,7 +34,7 @@ public class OrderEvent implements Event {
     }
 
     @Override
-    public Date getDate() {
+    public Instant getDate() {
         return this.date;
     }
 
@@ -2,24 +2,28 @@ package com.techelly.events.payment;
 
 import com.techelly.dto.PaymentDto;
 import com.techelly.events.Event;
+import com.techelly.events.EventIds;
 
 import lombok.Data;
 
-import java.util.Date;
+import java.time.Instant;
 import java.util.UUID;
 
 @Data
 public class PaymentEvent implements Event {
 
-    private final UUID eventId = UUID.randomUUID();
-    private final Date date = new Date();
+    private UUID eventId;
+    private Instant date;
     private PaymentDto payment;
     private PaymentStatus paymentStatus;
 
+    // used by deserialization, which keeps the id and date of the original event
     public PaymentEvent() {
     }
 
     public PaymentEvent(PaymentDto payment, PaymentStatus status) {
+        this.eventId = EventIds.next();
+        this.date = EventIds.timestamp(this.eventId);
         this.payment = payment;
         this.paymentStatus = status;
     }
@@ -30,7 +34,7 @@ public class PaymentEvent implements Event {
     }
 
     @Override
-    public Date getDate() {
+    public Instant getDate() {
         return this.date;
     }
 
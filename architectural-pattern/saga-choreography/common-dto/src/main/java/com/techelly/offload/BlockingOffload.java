@@ -0,0 +1,59 @@
+package com.techelly.offload;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/*
+ * Runs blocking work, like a JPA transaction, on a bounded pool of its own instead of the binder thread.
+ * Events are hashed by key into lanes. A lane runs one event at a time, so events with the same key keep their order,
+ * while the lanes run side by side on the pool.
+ * The number of lanes caps the work in flight. The pool queue is as large as that cap, so a task is never rejected.
+ * The pool exports executor.queued, executor.active and executor.completed tagged with its name.
+ */
+public class BlockingOffload implements Closeable {
+
+    private final int lanes;
+    private final Scheduler scheduler;
+
+    public BlockingOffload(String name, int threads, int lanes, MeterRegistry registry) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(lanes),
+                runnable -> new Thread(runnable, name + "-offload-" + count.incrementAndGet()));
+        executor.allowCoreThreadTimeOut(true);
+        this.lanes = lanes;
+        this.scheduler = Schedulers.fromExecutorService(ExecutorServiceMetrics.monitor(registry, executor, name));
+    }
+
+    // the work is subscribed on the pool. its results come out in order per key, not across keys
+    public <T, R> Flux<R> process(final Flux<T> flux, final Function<T, ?> key, final Function<T, Mono<R>> work) {
+        return flux
+                .groupBy(event -> this.lane(key.apply(event)))
+                .flatMap(lane -> lane.concatMap(event -> this.run(work.apply(event))), this.lanes);
+    }
+
+    public <R> Mono<R> run(final Mono<R> work) {
+        return work.subscribeOn(this.scheduler);
+    }
+
+    @Override
+    public void close() {
+        this.scheduler.dispose();
+    }
+
+    private int lane(final Object key) {
+        return key == null ? 0 : Math.floorMod(key.hashCode(), this.lanes);
+    }
+
+}
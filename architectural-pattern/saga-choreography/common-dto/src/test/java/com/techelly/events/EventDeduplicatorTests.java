@@ -0,0 +1,97 @@
+package com.techelly.events;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EventDeduplicatorTests {
+
+    private EventDeduplicator dedupe(Duration window) {
+        return new EventDeduplicator("test", 64 * 1024, window, 1000, new SimpleMeterRegistry());
+    }
+
+    @Test
+    void dropsProcessedEvents() {
+        EventDeduplicator dedupe = this.dedupe(Duration.ofMinutes(10));
+        UUID eventId = UUID.randomUUID();
+        AtomicInteger runs = new AtomicInteger();
+
+        assertEquals(1, dedupe.processOnce(eventId, () -> Mono.just(runs.incrementAndGet())).block());
+        assertTrue(dedupe.isDuplicate(eventId));
+        assertNull(dedupe.processOnce(eventId, () -> Mono.just(runs.incrementAndGet())).block());
+        assertEquals(1, runs.get());
+        assertFalse(dedupe.isDuplicate(UUID.randomUUID()));
+    }
+
+    @Test
+    void retriesFailedEvents() {
+        EventDeduplicator dedupe = this.dedupe(Duration.ofMinutes(10));
+        UUID eventId = UUID.randomUUID();
+        AtomicInteger runs = new AtomicInteger();
+
+        assertThrows(IllegalStateException.class, () -> dedupe.processOnce(eventId, () -> {
+            runs.incrementAndGet();
+            return Mono.error(new IllegalStateException("failed"));
+        }).block());
+        assertFalse(dedupe.isDuplicate(eventId));
+        assertEquals(2, dedupe.processOnce(eventId, () -> Mono.just(runs.incrementAndGet())).block());
+        assertTrue(dedupe.isDuplicate(eventId));
+    }
+
+    @Test
+    void forgetsEventsAfterTwoWindows() throws InterruptedException {
+        EventDeduplicator dedupe = this.dedupe(Duration.ofMillis(100));
+        UUID eventId = UUID.randomUUID();
+
+        dedupe.markProcessed(eventId);
+        assertTrue(dedupe.isDuplicate(eventId));
+        Thread.sleep(250);
+        assertFalse(dedupe.isDuplicate(eventId));
+    }
+
+    @Test
+    void dropsCopiesDeliveredWhileTheFirstRuns() {
+        EventDeduplicator dedupe = this.dedupe(Duration.ofMinutes(10));
+        UUID eventId = UUID.randomUUID();
+        AtomicInteger runs = new AtomicInteger();
+        Sinks.One<Integer> first = Sinks.one();
+
+        Mono<Integer> running = dedupe.processOnce(eventId, () -> {
+            runs.incrementAndGet();
+            return first.asMono();
+        }).cache();
+        running.subscribe();
+        assertFalse(dedupe.processOnce(eventId, runs::incrementAndGet));
+        first.tryEmitValue(1);
+        assertEquals(1, running.block());
+        assertEquals(1, runs.get());
+        assertTrue(dedupe.isDuplicate(eventId));
+    }
+
+    @Test
+    void releasesTheClaimWhenTheWorkFails() {
+        EventDeduplicator dedupe = this.dedupe(Duration.ofMinutes(10));
+        UUID eventId = UUID.randomUUID();
+        AtomicInteger runs = new AtomicInteger();
+
+        assertThrows(IllegalStateException.class, () -> dedupe.processOnce(eventId, (Runnable) () -> {
+            runs.incrementAndGet();
+            throw new IllegalStateException("failed");
+        }));
+        assertTrue(dedupe.processOnce(eventId, runs::incrementAndGet));
+        assertFalse(dedupe.processOnce(eventId, runs::incrementAndGet));
+        assertEquals(2, runs.get());
+    }
+
+}
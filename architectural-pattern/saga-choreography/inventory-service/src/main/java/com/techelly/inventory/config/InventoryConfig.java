@@ -1,17 +1,25 @@
 package com.techelly.inventory.config;
 
+import com.techelly.events.EventDeduplicator;
 import com.techelly.events.inventory.InventoryEvent;
 import com.techelly.events.order.OrderEvent;
 import com.techelly.events.order.OrderStatus;
 import com.techelly.inventory.service.InventoryService;
+import com.techelly.offload.BlockingOffload;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Configuration
 public class InventoryConfig {
@@ -19,9 +27,67 @@ public class InventoryConfig {
     @Autowired
     private InventoryService service;
 
+    @Value("${inventory.batch.enabled:false}")
+    private boolean batchEnabled;
+
+    @Value("${inventory.batch.size:100}")
+    private int batchSize;
+
+    @Value("${inventory.batch.timeout:20ms}")
+    private Duration batchTimeout;
+
+    // threads should match the connection pool, lanes cap the events in flight
     @Bean
-    public Function<Flux<OrderEvent>, Flux<InventoryEvent>> inventoryProcessor() {
-        return flux -> flux.flatMap(this::processInventory);
+    public BlockingOffload inventoryOffload(@Value("${offload.threads:10}") int threads,
+                                            @Value("${offload.lanes:32}") int lanes,
+                                            MeterRegistry registry){
+        return new BlockingOffload("inventory", threads, lanes, registry);
+    }
+
+    // drops redelivered order events before any database work
+    @Bean
+    public EventDeduplicator inventoryDedupe(@Value("${dedupe.memory:1MB}") DataSize memory,
+                                             @Value("${dedupe.window:10m}") Duration window,
+                                             @Value("${dedupe.lru-size:10000}") int lruSize,
+                                             MeterRegistry registry){
+        return new EventDeduplicator("inventory", memory.toBytes(), window, lruSize, registry);
+    }
+
+    /*
+     * The transactions block, so they run on the offload pool. Lanes are picked by order, so the events of an order stay
+     * in order. Orders for the same product may run side by side, the stock is only changed with atomic updates.
+     * In batch mode up to batch.size events, or whatever arrived within batch.timeout, share one transaction.
+     * Batches run one after the other, so the inventory events come out in input order.
+     * Duplicates are dropped right before the transaction starts, an event counts as processed once it committed.
+     */
+    @Bean
+    public Function<Flux<OrderEvent>, Flux<InventoryEvent>> inventoryProcessor(BlockingOffload inventoryOffload,
+                                                                              EventDeduplicator inventoryDedupe) {
+        if(this.batchEnabled)
+            return flux -> flux
+                    .bufferTimeout(this.batchSize, this.batchTimeout)
+                    .concatMap(batch -> inventoryOffload.run(Mono.defer(() -> this.processBatchOnce(batch, inventoryDedupe))))
+                    .flatMapIterable(Function.identity());
+        return flux -> inventoryOffload.process(flux, event -> event.getPurchaseOrder().getOrderId(),
+                event -> inventoryDedupe.processOnce(event.getEventId(), () -> this.processInventory(event)));
+    }
+
+    // the events of the batch which were not processed before, each one claimed once and marked when the batch committed
+    private Mono<List<InventoryEvent>> processBatchOnce(List<OrderEvent> batch, EventDeduplicator dedupe){
+        List<OrderEvent> claimed = batch.stream()
+                .filter(event -> dedupe.claim(event.getEventId()))
+                .collect(Collectors.toList());
+        return this.processBatch(claimed)
+                .doOnSuccess(events -> claimed.forEach(event -> dedupe.markProcessed(event.getEventId())))
+                .doOnError(ex -> claimed.forEach(event -> dedupe.release(event.getEventId())));
+    }
+
+    // a failed batch is rolled back and its events are applied one by one, so one bad event does not fail the others
+    private Mono<List<InventoryEvent>> processBatch(List<OrderEvent> batch){
+        return Mono.fromSupplier(() -> this.service.processBatch(batch))
+                .onErrorResume(ex -> Flux.fromIterable(batch)
+                        .concatMap(this::processInventory)
+                        .collectList());
     }
 
     private Mono<InventoryEvent> processInventory(OrderEvent event){
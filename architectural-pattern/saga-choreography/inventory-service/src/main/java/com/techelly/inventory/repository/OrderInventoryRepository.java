@@ -1,10 +1,28 @@
 package com.techelly.inventory.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.techelly.inventory.entity.OrderInventory;
 
 @Repository
 public interface OrderInventoryRepository extends JpaRepository<OrderInventory, Integer> {
+
+    // reads the stock from the database, not from an entity the persistence context may already hold
+    @Query("select i.availableInventory from OrderInventory i where i.productId = :productId")
+    Integer findAvailableInventory(@Param("productId") int productId);
+
+    // takes quantity off the stock if that much is left. returns the number of rows changed, 0 when there is not enough
+    @Modifying
+    @Query("update OrderInventory i set i.availableInventory = i.availableInventory - :quantity " +
+            "where i.productId = :productId and i.availableInventory >= :quantity")
+    int decrement(@Param("productId") int productId, @Param("quantity") int quantity);
+
+    @Modifying
+    @Query("update OrderInventory i set i.availableInventory = i.availableInventory + :quantity where i.productId = :productId")
+    int increment(@Param("productId") int productId, @Param("quantity") int quantity);
+
 }
@@ -1,9 +1,11 @@
 package com.techelly.inventory.service;
 
 import com.techelly.dto.InventoryDto;
+import com.techelly.dto.PurchaseOrderDto;
 import com.techelly.events.inventory.InventoryEvent;
 import com.techelly.events.inventory.InventoryStatus;
 import com.techelly.events.order.OrderEvent;
+import com.techelly.events.order.OrderStatus;
 import com.techelly.inventory.entity.OrderInventoryConsumption;
 import com.techelly.inventory.repository.OrderInventoryConsumptionRepository;
 import com.techelly.inventory.repository.OrderInventoryRepository;
@@ -12,6 +14,17 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 @Service
 public class InventoryService {
 
@@ -21,29 +34,94 @@ public class InventoryService {
     @Autowired
     private OrderInventoryConsumptionRepository consumptionRepository;
 
+    @Autowired
+    private StockLeases stockLeases;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // the stock is taken with one conditional update, so concurrent orders can not both take the last unit
     @Transactional
     public InventoryEvent newOrderInventory(OrderEvent orderEvent){
-        InventoryDto dto = InventoryDto.of(orderEvent.getPurchaseOrder().getOrderId(), orderEvent.getPurchaseOrder().getProductId());
-        return inventoryRepository.findById(orderEvent.getPurchaseOrder().getProductId())
-                .filter(i -> i.getAvailableInventory() > 0 )
-                .map(i -> {
-                    i.setAvailableInventory(i.getAvailableInventory() - 1);
-                    consumptionRepository.save(OrderInventoryConsumption.of(orderEvent.getPurchaseOrder().getOrderId(), orderEvent.getPurchaseOrder().getProductId(), 1));
-                    return new InventoryEvent(dto, InventoryStatus.RESERVED);
-                })
-                .orElse(new InventoryEvent(dto, InventoryStatus.REJECTED));
+        int productId = orderEvent.getPurchaseOrder().getProductId();
+        InventoryDto dto = InventoryDto.of(orderEvent.getPurchaseOrder().getOrderId(), productId);
+        if(!this.takeStock(productId))
+            return new InventoryEvent(dto, InventoryStatus.REJECTED);
+        consumptionRepository.save(OrderInventoryConsumption.of(orderEvent.getPurchaseOrder().getOrderId(), productId, 1));
+        return new InventoryEvent(dto, InventoryStatus.RESERVED);
     }
 
     @Transactional
     public void cancelOrderInventory(OrderEvent orderEvent){
         consumptionRepository.findById(orderEvent.getPurchaseOrder().getOrderId())
                 .ifPresent(ci -> {
-                    inventoryRepository.findById(ci.getProductId())
-                            .ifPresent(i ->
-                                i.setAvailableInventory(i.getAvailableInventory() + ci.getQuantityConsumed())
-                            );
+                    inventoryRepository.increment(ci.getProductId(), ci.getQuantityConsumed());
                     consumptionRepository.delete(ci);
                 });
     }
 
+    /*
+     * Applies a batch of order events in one transaction, with the same outcome as handling them one by one.
+     * The stock is taken and given back just like on the single event path, the consumptions are loaded with one query.
+     * Their changes are flushed once on commit, which lets hibernate send the inserts, updates and deletes as jdbc batches.
+     * Returns the inventory events of the created orders in input order.
+     */
+    @Transactional
+    public List<InventoryEvent> processBatch(List<OrderEvent> orderEvents){
+        Set<UUID> orderIds = orderEvents.stream()
+                .map(e -> e.getPurchaseOrder().getOrderId())
+                .collect(Collectors.toSet());
+        Map<UUID, OrderInventoryConsumption> consumptions = consumptionRepository.findAllById(orderIds)
+                .stream()
+                .collect(Collectors.toMap(OrderInventoryConsumption::getOrderId, Function.identity()));
+        Map<UUID, OrderInventoryConsumption> released = new HashMap<>();
+        List<InventoryEvent> inventoryEvents = new ArrayList<>();
+        for(OrderEvent orderEvent : orderEvents){
+            if(orderEvent.getOrderStatus().equals(OrderStatus.ORDER_CREATED))
+                inventoryEvents.add(this.reserve(orderEvent.getPurchaseOrder(), consumptions, released));
+            else
+                this.release(orderEvent.getPurchaseOrder(), consumptions, released);
+        }
+        consumptionRepository.deleteAll(released.values());
+        return inventoryEvents;
+    }
+
+    // a leased unit if there is one, the conditional update otherwise
+    private boolean takeStock(final int productId){
+        return (stockLeases.isEnabled() && stockLeases.take(productId))
+                || inventoryRepository.decrement(productId, 1) == 1;
+    }
+
+    private InventoryEvent reserve(PurchaseOrderDto purchaseOrder, Map<UUID, OrderInventoryConsumption> consumptions,
+                                   Map<UUID, OrderInventoryConsumption> released){
+        InventoryDto dto = InventoryDto.of(purchaseOrder.getOrderId(), purchaseOrder.getProductId());
+        if(!this.takeStock(purchaseOrder.getProductId()))
+            return new InventoryEvent(dto, InventoryStatus.REJECTED);
+        // a redelivered order overwrites its consumption, just like save() does on the single event path.
+        // one released earlier in the batch is reused, its delete and a new insert would clash on the id
+        OrderInventoryConsumption existing = consumptions.get(purchaseOrder.getOrderId());
+        if(existing == null)
+            existing = released.remove(purchaseOrder.getOrderId());
+        if(existing != null){
+            existing.setProductId(purchaseOrder.getProductId());
+            existing.setQuantityConsumed(1);
+        }else{
+            // persist instead of save, save() would select every new row first because its id is assigned
+            existing = OrderInventoryConsumption.of(purchaseOrder.getOrderId(), purchaseOrder.getProductId(), 1);
+            entityManager.persist(existing);
+        }
+        consumptions.put(existing.getOrderId(), existing);
+        return new InventoryEvent(dto, InventoryStatus.RESERVED);
+    }
+
+    // the consumption is deleted at the end of the batch, unless a redelivered order takes it up again
+    private void release(PurchaseOrderDto purchaseOrder, Map<UUID, OrderInventoryConsumption> consumptions,
+                         Map<UUID, OrderInventoryConsumption> released){
+        OrderInventoryConsumption ci = consumptions.remove(purchaseOrder.getOrderId());
+        if(ci == null)
+            return;
+        inventoryRepository.increment(ci.getProductId(), ci.getQuantityConsumed());
+        released.put(ci.getOrderId(), ci);
+    }
+
 }
@@ -0,0 +1,181 @@
+package com.techelly.inventory.service;
+
+import com.techelly.inventory.repository.OrderInventoryRepository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/*
+ * Stock this instance has taken off the database in chunks, so orders for a hot product do not all queue up on its row.
+ * The units of a product are spread over stripes and taken with a CAS, a thread starts at its own stripe.
+ * When the lease runs dry the caller falls back to the conditional update, while the next chunk is leased in the background.
+ * Leasing never happens on the caller's thread, which already holds a connection for its own transaction.
+ * Leased units are not sold by any other instance. Leases which were not used since the last reconcile are handed back.
+ * Units still leased when the instance dies are lost to the stock, so it is undercounted but never oversold.
+ */
+@Component
+public class StockLeases {
+
+    @Value("${inventory.lease.enabled:false}")
+    private boolean enabled;
+
+    @Value("${inventory.lease.chunk:50}")
+    private int chunk;
+
+    @Value("${inventory.lease.stripes:8}")
+    private int stripes;
+
+    @Autowired
+    private OrderInventoryRepository inventoryRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final Map<Integer, Lease> leases = new ConcurrentHashMap<>();
+    private TransactionTemplate transactionTemplate;
+    private ExecutorService refiller;
+
+    @PostConstruct
+    public void init(){
+        this.transactionTemplate = new TransactionTemplate(this.transactionManager);
+        this.refiller = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "stock-lease-refill"));
+    }
+
+    public boolean isEnabled(){
+        return this.enabled;
+    }
+
+    // takes one leased unit of the product. the unit is given back if the surrounding transaction rolls back
+    public boolean take(final int productId){
+        Lease lease = this.leases.computeIfAbsent(productId, id -> new Lease(this.stripes));
+        if(!lease.used)
+            lease.used = true;
+        int stripe = this.stripe();
+        if(!lease.tryTake(stripe)){
+            if(lease.refilling.compareAndSet(false, true))
+                this.refiller.execute(() -> this.refill(productId, lease));
+            return false;
+        }
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    if(status == STATUS_ROLLED_BACK)
+                        lease.add(stripe, 1);
+                }
+            });
+        }
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${inventory.lease.reconcile-interval:5000}")
+    public void reconcile(){
+        this.leases.forEach((productId, lease) -> {
+            if(lease.used)
+                lease.used = false;
+            else
+                this.giveBack(productId, lease);
+        });
+    }
+
+    // on close rather than on destroy, the repository may already be gone by then
+    @EventListener(ContextClosedEvent.class)
+    public void close() throws InterruptedException {
+        this.refiller.shutdown();
+        this.refiller.awaitTermination(5, TimeUnit.SECONDS);
+        this.leases.forEach(this::giveBack);
+    }
+
+    // leases up to one chunk, less if that is all there is, and spreads it over the stripes.
+    // a retry reads the stock again with a query, findById would return the entity of the first attempt unchanged
+    private void refill(final int productId, final Lease lease){
+        try {
+            Integer leased = this.transactionTemplate.execute(status -> {
+                for(int attempt = 0; attempt < 3; attempt++){
+                    Integer available = this.inventoryRepository.findAvailableInventory(productId);
+                    int quantity = available == null ? 0 : Math.min(this.chunk, available);
+                    if(quantity <= 0)
+                        return 0;
+                    if(this.inventoryRepository.decrement(productId, quantity) == 1)
+                        return quantity;
+                }
+                return 0;
+            });
+            if(leased != null && leased > 0){
+                for(int stripe = 0; stripe < this.stripes; stripe++)
+                    lease.add(stripe, leased / this.stripes + (stripe < leased % this.stripes ? 1 : 0));
+            }
+        } finally {
+            lease.refilling.set(false);
+        }
+    }
+
+    private void giveBack(final int productId, final Lease lease){
+        long units = lease.drain();
+        if(units > 0)
+            this.transactionTemplate.executeWithoutResult(status -> this.inventoryRepository.increment(productId, (int) units));
+    }
+
+    private int stripe(){
+        return (int) (Thread.currentThread().getId() % this.stripes);
+    }
+
+    private static final class Lease {
+
+        // one stripe per cache line, so threads on different stripes do not contend
+        private static final int PADDING = 8;
+
+        private final AtomicLongArray units;
+        private final int stripes;
+        private final AtomicBoolean refilling = new AtomicBoolean();
+        private volatile boolean used;
+
+        private Lease(int stripes) {
+            this.units = new AtomicLongArray(stripes * PADDING);
+            this.stripes = stripes;
+        }
+
+        // tries the given stripe first and then the others
+        private boolean tryTake(final int stripe){
+            for(int i = 0; i < this.stripes; i++){
+                int index = ((stripe + i) % this.stripes) * PADDING;
+                long current;
+                while((current = this.units.get(index)) > 0){
+                    if(this.units.compareAndSet(index, current, current - 1))
+                        return true;
+                }
+            }
+            return false;
+        }
+
+        private void add(final int stripe, final long count){
+            this.units.addAndGet(stripe * PADDING, count);
+        }
+
+        private long drain(){
+            long total = 0;
+            for(int i = 0; i < this.stripes; i++)
+                total += this.units.getAndSet(i * PADDING, 0);
+            return total;
+        }
+
+    }
+
+}
@@ -1,2 +1,2 @@
 DROP TABLE IF EXISTS order_inventory;
-CREATE TABLE order_inventory AS SELECT * FROM CSVREAD('classpath:order_inventory.csv');
\ No newline at end of file
+CREATE TABLE order_inventory(product_id INT PRIMARY KEY, available_inventory INT NOT NULL) AS SELECT * FROM CSVREAD('classpath:order_inventory.csv');
\ No newline at end of file
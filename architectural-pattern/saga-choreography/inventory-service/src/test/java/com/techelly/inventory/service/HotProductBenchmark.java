@@ -0,0 +1,112 @@
+package com.techelly.inventory.service;
+
+import com.techelly.dto.PurchaseOrderDto;
+import com.techelly.events.inventory.InventoryStatus;
+import com.techelly.events.order.OrderEvent;
+import com.techelly.events.order.OrderStatus;
+import com.techelly.inventory.InventoryApplication;
+import com.techelly.inventory.entity.OrderInventory;
+import com.techelly.inventory.entity.OrderInventoryConsumption;
+import com.techelly.inventory.repository.OrderInventoryConsumptionRepository;
+import com.techelly.inventory.repository.OrderInventoryRepository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Orders per second from all threads for a single hot product, against the in-memory H2 database.
+ * readCheckWrite is the former findById, check and dirty write, the other modes go through InventoryService.
+ * run main() on the test classpath, or org.openjdk.jmh.Main HotProductBenchmark for custom options
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class HotProductBenchmark {
+
+    private static final int PRODUCT_ID = 1;
+
+    @Param({"readCheckWrite", "conditional", "lease"})
+    private String mode;
+
+    private ConfigurableApplicationContext context;
+    private InventoryService service;
+    private OrderInventoryRepository inventoryRepository;
+    private OrderInventoryConsumptionRepository consumptionRepository;
+    private TransactionTemplate transactionTemplate;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.context = new SpringApplicationBuilder(TestChannelBinderConfiguration.getCompleteConfiguration(InventoryApplication.class))
+                .web(WebApplicationType.NONE)
+                .run("--spring.cloud.stream.default-binder=integration",
+                        "--inventory.lease.enabled=" + "lease".equals(this.mode),
+                        "--logging.level.root=WARN");
+        this.service = this.context.getBean(InventoryService.class);
+        this.inventoryRepository = this.context.getBean(OrderInventoryRepository.class);
+        this.consumptionRepository = this.context.getBean(OrderInventoryConsumptionRepository.class);
+        this.transactionTemplate = new TransactionTemplate(this.context.getBean(PlatformTransactionManager.class));
+        this.inventoryRepository.save(OrderInventory.of(PRODUCT_ID, 1_000_000_000));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.context.close();
+    }
+
+    @Benchmark
+    public boolean reserve() {
+        PurchaseOrderDto purchaseOrder = PurchaseOrderDto.of(UUID.randomUUID(), PRODUCT_ID, 100, 1);
+        if("readCheckWrite".equals(this.mode))
+            return this.readCheckWrite(purchaseOrder);
+        return this.service.newOrderInventory(new OrderEvent(purchaseOrder, OrderStatus.ORDER_CREATED))
+                .getStatus() == InventoryStatus.RESERVED;
+    }
+
+    private boolean readCheckWrite(final PurchaseOrderDto purchaseOrder) {
+        Boolean reserved = this.transactionTemplate.execute(status -> this.inventoryRepository.findById(PRODUCT_ID)
+                .filter(i -> i.getAvailableInventory() > 0)
+                .map(i -> {
+                    i.setAvailableInventory(i.getAvailableInventory() - 1);
+                    this.consumptionRepository.save(OrderInventoryConsumption.of(purchaseOrder.getOrderId(), PRODUCT_ID, 1));
+                    return true;
+                })
+                .orElse(false));
+        return Boolean.TRUE.equals(reserved);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(HotProductBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+
+}
@@ -0,0 +1,103 @@
+package com.techelly.inventory.service;
+
+import com.techelly.dto.PurchaseOrderDto;
+import com.techelly.events.inventory.InventoryEvent;
+import com.techelly.events.order.OrderEvent;
+import com.techelly.events.order.OrderStatus;
+import com.techelly.inventory.entity.OrderInventory;
+import com.techelly.inventory.entity.OrderInventoryConsumption;
+import com.techelly.inventory.repository.OrderInventoryConsumptionRepository;
+import com.techelly.inventory.repository.OrderInventoryRepository;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.annotation.Import;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest(properties = "spring.cloud.stream.default-binder=integration")
+@Import(TestChannelBinderConfiguration.class)
+class InventoryServiceTests {
+
+    @Autowired
+    private InventoryService service;
+
+    @Autowired
+    private OrderInventoryRepository inventoryRepository;
+
+    @Autowired
+    private OrderInventoryConsumptionRepository consumptionRepository;
+
+    // a batch with rejections, cancels, redeliveries and a create redelivered after its cancel
+    @Test
+    void batchMatchesOneEventAtATime() {
+        UUID o1 = UUID.randomUUID(), o2 = UUID.randomUUID(), o3 = UUID.randomUUID(),
+                o4 = UUID.randomUUID(), o5 = UUID.randomUUID(), o6 = UUID.randomUUID();
+        List<OrderEvent> events = List.of(
+                this.event(o1, 1, OrderStatus.ORDER_CREATED),
+                this.event(o2, 1, OrderStatus.ORDER_CREATED),
+                this.event(o3, 1, OrderStatus.ORDER_CREATED),
+                this.event(o1, 1, OrderStatus.ORDER_CANCELLED),
+                this.event(o3, 1, OrderStatus.ORDER_CREATED),
+                this.event(o4, 2, OrderStatus.ORDER_CREATED),
+                this.event(o4, 2, OrderStatus.ORDER_CANCELLED),
+                this.event(o4, 2, OrderStatus.ORDER_CREATED),
+                this.event(o5, 2, OrderStatus.ORDER_CREATED),
+                this.event(o5, 2, OrderStatus.ORDER_CREATED),
+                this.event(o6, 2, OrderStatus.ORDER_CANCELLED),
+                this.event(o2, 1, OrderStatus.ORDER_CANCELLED));
+
+        this.reset();
+        List<String> batched = this.outcomes(this.service.processBatch(events));
+        Map<Integer, Integer> batchedStock = this.stock();
+        Map<UUID, String> batchedConsumptions = this.consumptions();
+
+        this.reset();
+        List<InventoryEvent> inventoryEvents = new ArrayList<>();
+        for(OrderEvent event : events){
+            if(event.getOrderStatus().equals(OrderStatus.ORDER_CREATED))
+                inventoryEvents.add(this.service.newOrderInventory(event));
+            else
+                this.service.cancelOrderInventory(event);
+        }
+
+        assertEquals(this.outcomes(inventoryEvents), batched);
+        assertEquals(this.stock(), batchedStock);
+        assertEquals(this.consumptions(), batchedConsumptions);
+    }
+
+    private void reset() {
+        this.consumptionRepository.deleteAll();
+        this.inventoryRepository.save(OrderInventory.of(1, 2));
+        this.inventoryRepository.save(OrderInventory.of(2, 5));
+    }
+
+    private OrderEvent event(UUID orderId, int productId, OrderStatus status) {
+        return new OrderEvent(PurchaseOrderDto.of(orderId, productId, 100, 1), status);
+    }
+
+    private List<String> outcomes(List<InventoryEvent> inventoryEvents) {
+        return inventoryEvents.stream()
+                .map(e -> e.getInventory().getOrderId() + ":" + e.getStatus())
+                .collect(Collectors.toList());
+    }
+
+    private Map<Integer, Integer> stock() {
+        return this.inventoryRepository.findAll().stream()
+                .collect(Collectors.toMap(OrderInventory::getProductId, OrderInventory::getAvailableInventory));
+    }
+
+    private Map<UUID, String> consumptions() {
+        return this.consumptionRepository.findAll().stream()
+                .collect(Collectors.toMap(OrderInventoryConsumption::getOrderId, c -> c.getProductId() + "x" + c.getQuantityConsumed()));
+    }
+
+}
@@ -1,35 +1,44 @@
 package com.techelly.order.config;
 
+import com.techelly.events.EventDeduplicator;
 import com.techelly.events.inventory.InventoryEvent;
 import com.techelly.events.payment.PaymentEvent;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
 
+import java.time.Duration;
 import java.util.function.Consumer;
 
 @Configuration
 public class EventHandlersConfig {
 
     @Autowired
-    private OrderStatusUpdateEventHandler orderEventHandler;
+    private OrderOutcomeJoin outcomeJoin;
 
+    // shared by both consumers, event ids are unique across event types
     @Bean
-    public Consumer<PaymentEvent> paymentEventConsumer(){
-        return pe -> {
-            orderEventHandler.updateOrder(pe.getPayment().getOrderId(), po -> {
-                po.setPaymentStatus(pe.getPaymentStatus());
-            });
-        };
+    public EventDeduplicator eventDedupe(@Value("${dedupe.memory:1MB}") DataSize memory,
+                                         @Value("${dedupe.window:10m}") Duration window,
+                                         @Value("${dedupe.lru-size:10000}") int lruSize,
+                                         MeterRegistry registry){
+        return new EventDeduplicator("order", memory.toBytes(), window, lruSize, registry);
     }
 
+    // both outcomes of an order are joined first, so the order is written once. redelivered outcomes are dropped
     @Bean
-    public Consumer<InventoryEvent> inventoryEventConsumer(){
-        return ie -> {
-            orderEventHandler.updateOrder(ie.getInventory().getOrderId(), po -> {
-                po.setInventoryStatus(ie.getStatus());
-            });
-        };
+    public Consumer<PaymentEvent> paymentEventConsumer(EventDeduplicator eventDedupe){
+        return pe -> eventDedupe.processOnce(pe.getEventId(),
+                () -> outcomeJoin.payment(pe.getPayment().getOrderId(), pe.getPaymentStatus()));
+    }
+
+    @Bean
+    public Consumer<InventoryEvent> inventoryEventConsumer(EventDeduplicator eventDedupe){
+        return ie -> eventDedupe.processOnce(ie.getEventId(),
+                () -> outcomeJoin.inventory(ie.getInventory().getOrderId(), ie.getStatus()));
     }
 
 }
@@ -0,0 +1,158 @@
+package com.techelly.order.config;
+
+import com.techelly.events.inventory.InventoryStatus;
+import com.techelly.events.payment.PaymentStatus;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * Joins the payment and the inventory outcome of an order in memory, so the order is written once instead of twice,
+ * and the two consumers no longer collide on its version.
+ * The first outcome is held until the other one arrives. If that takes longer than the ttl, or too many orders are
+ * pending already, the outcome is written on its own, just like before.
+ * Held outcomes are written on shutdown. A crash loses them, those orders keep waiting for the missing status.
+ * order.update.conflicts counts the writes which lost on the version of the order and are retried.
+ */
+@Component
+public class OrderOutcomeJoin {
+
+    @Value("${order.join.enabled:true}")
+    private boolean enabled;
+
+    @Value("${order.join.ttl:5s}")
+    private Duration ttl;
+
+    @Value("${order.join.max-pending:100000}")
+    private int maxPending;
+
+    @Autowired
+    private OrderStatusUpdateEventHandler orderEventHandler;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    private final Map<UUID, Outcome> pending = new ConcurrentHashMap<>();
+    private Counter conflicts;
+
+    @PostConstruct
+    public void init(){
+        this.conflicts = Counter.builder("order.update.conflicts")
+                .description("order updates rolled back by a concurrent update of the same order")
+                .register(this.registry);
+    }
+
+    public void payment(final UUID orderId, final PaymentStatus paymentStatus){
+        this.join(orderId, new Outcome(paymentStatus, null, System.nanoTime()));
+    }
+
+    public void inventory(final UUID orderId, final InventoryStatus inventoryStatus){
+        this.join(orderId, new Outcome(null, inventoryStatus, System.nanoTime()));
+    }
+
+    @Scheduled(fixedDelayString = "${order.join.sweep-interval:1000}")
+    public void expire(){
+        long expired = System.nanoTime() - this.ttl.toNanos();
+        this.pending.forEach((orderId, outcome) -> {
+            if(outcome.arrivedAt - expired < 0 && this.pending.remove(orderId, outcome)){
+                try {
+                    this.write(orderId, outcome);
+                } catch (RuntimeException ex) {
+                    // held on to and tried again on the next sweep
+                    this.pending.merge(orderId, outcome, Outcome::merge);
+                }
+            }
+        });
+    }
+
+    @EventListener(ContextClosedEvent.class)
+    public void flush(){
+        this.pending.keySet().forEach(orderId -> {
+            Outcome outcome = this.pending.remove(orderId);
+            if(outcome != null)
+                this.write(orderId, outcome);
+        });
+    }
+
+    private void join(final UUID orderId, final Outcome outcome){
+        if(!this.enabled || (this.pending.size() >= this.maxPending && !this.pending.containsKey(orderId))){
+            this.write(orderId, outcome);
+            return;
+        }
+        Outcome[] held = new Outcome[1];
+        Outcome[] joined = new Outcome[1];
+        this.pending.compute(orderId, (id, current) -> {
+            if(current == null)
+                return outcome;
+            Outcome merged = current.merge(outcome);
+            if(!merged.isComplete())
+                return merged;
+            held[0] = current;
+            joined[0] = merged;
+            return null;
+        });
+        if(joined[0] == null)
+            return;
+        try {
+            this.write(orderId, joined[0]);
+        } catch (RuntimeException ex) {
+            // the binder retries this event, which has to find the other outcome again
+            this.pending.merge(orderId, held[0], Outcome::merge);
+            throw ex;
+        }
+    }
+
+    private void write(final UUID orderId, final Outcome outcome){
+        try {
+            this.orderEventHandler.updateOrder(orderId, po -> {
+                if(outcome.paymentStatus != null)
+                    po.setPaymentStatus(outcome.paymentStatus);
+                if(outcome.inventoryStatus != null)
+                    po.setInventoryStatus(outcome.inventoryStatus);
+            });
+        } catch (OptimisticLockingFailureException ex) {
+            this.conflicts.increment();
+            throw ex;
+        }
+    }
+
+    private static final class Outcome {
+
+        private final PaymentStatus paymentStatus;
+        private final InventoryStatus inventoryStatus;
+        private final long arrivedAt;
+
+        private Outcome(PaymentStatus paymentStatus, InventoryStatus inventoryStatus, long arrivedAt) {
+            this.paymentStatus = paymentStatus;
+            this.inventoryStatus = inventoryStatus;
+            this.arrivedAt = arrivedAt;
+        }
+
+        // the later outcome wins for its side, the ttl still counts from the first one
+        private Outcome merge(final Outcome later){
+            return new Outcome(
+                    later.paymentStatus != null ? later.paymentStatus : this.paymentStatus,
+                    later.inventoryStatus != null ? later.inventoryStatus : this.inventoryStatus,
+                    Math.min(this.arrivedAt, later.arrivedAt));
+        }
+
+        private boolean isComplete(){
+            return this.paymentStatus != null && this.inventoryStatus != null;
+        }
+
+    }
+
+}
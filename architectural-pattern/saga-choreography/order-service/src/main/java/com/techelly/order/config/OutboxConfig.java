@@ -0,0 +1,19 @@
+package com.techelly.order.config;
+
+import com.techelly.order.service.OutboxRelay;
+
+import org.springframework.cloud.stream.config.ProducerMessageHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.integration.kafka.outbound.KafkaProducerMessageHandler;
+
+@Configuration
+public class OutboxConfig {
+
+    // picked up by the kafka binder only, its producer of orderEvent-out-0 hands the future of every send to the relay
+    @Bean
+    public ProducerMessageHandlerCustomizer<KafkaProducerMessageHandler<?, ?>> outboxSendFutures(OutboxRelay outboxRelay){
+        return (handler, destination) -> handler.setFuturesChannel(outboxRelay.getSendFutureChannel());
+    }
+
+}
@@ -1,14 +1,17 @@
 package com.techelly.order.controller;
 
+import com.techelly.order.dto.OrderPageDto;
 import com.techelly.order.entity.PurchaseOrder;
 import com.techelly.order.service.OrderCommandService;
 import com.techelly.order.service.OrderQueryService;
 import com.techelly.dto.OrderRequestDto;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
-import java.util.List;
 import java.util.UUID;
 
 @RestController
@@ -27,9 +30,18 @@ public class OrderController {
         return this.commandService.createOrder(requestDTO);
     }
 
-    @GetMapping("/all")
-    public List<PurchaseOrder> getOrders(){
-        return this.queryService.getAll();
+    // pass the next id of a page as after to get the following one
+    @GetMapping("/page")
+    public Mono<OrderPageDto> getOrderPage(@RequestParam(required = false) UUID after,
+                                           @RequestParam(defaultValue = "100") int limit){
+        return this.queryService.getPage(after, limit);
+    }
+
+    // written out order by order as ndjson, also for Accept: */*. a json array would collect all orders first,
+    // so json clients get a 406 and page through /page instead
+    @GetMapping(value = "/all", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<PurchaseOrder> getOrders(){
+        return this.queryService.streamAll();
     }
 
 }
@@ -0,0 +1,20 @@
+package com.techelly.order.dto;
+
+import com.techelly.order.entity.PurchaseOrder;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.UUID;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor(staticName = "of")
+public class OrderPageDto {
+
+    private List<PurchaseOrder> orders;
+    // the id to pass as after for the next page, null on the last page
+    private UUID next;
+
+}
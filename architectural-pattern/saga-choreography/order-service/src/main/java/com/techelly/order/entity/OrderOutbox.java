@@ -0,0 +1,35 @@
+package com.techelly.order.entity;
+
+import com.techelly.events.order.OrderStatus;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.time.Instant;
+import java.util.UUID;
+
+// an order event waiting to be relayed. the id gives the order in which events are published
+@Data
+@Entity
+@NoArgsConstructor
+@Table(indexes = @Index(columnList = "sent,id"))
+public class OrderOutbox {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE)
+    private Long id;
+    private UUID eventId;
+    private Instant createdAt;
+    private UUID orderId;
+    private Integer userId;
+    private Integer productId;
+    private Integer price;
+    private OrderStatus orderStatus;
+    private boolean sent;
+
+}
@@ -0,0 +1,33 @@
+package com.techelly.order.repository;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import com.techelly.order.entity.OrderOutbox;
+
+import javax.persistence.LockModeType;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface OrderOutboxRepository extends JpaRepository<OrderOutbox, Long> {
+
+    // select ... for update. a second relay waits for the rows the first one holds, instead of publishing them again
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    List<OrderOutbox> findBySentFalseOrderByIdAsc(Pageable pageable);
+
+    @Modifying
+    @Query("update OrderOutbox o set o.sent = true where o.id in :ids")
+    int markSent(@Param("ids") Collection<Long> ids);
+
+    @Modifying
+    @Query("delete from OrderOutbox o where o.sent = true and o.createdAt < :before")
+    int deleteSentBefore(@Param("before") Instant before);
+
+}
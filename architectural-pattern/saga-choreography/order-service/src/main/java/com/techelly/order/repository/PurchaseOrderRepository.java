@@ -1,12 +1,20 @@
 package com.techelly.order.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
 import com.techelly.order.entity.PurchaseOrder;
 
+import java.util.List;
 import java.util.UUID;
 
 @Repository
 public interface PurchaseOrderRepository extends JpaRepository<PurchaseOrder, UUID> {
+
+    // keyset pages by id: a page starts after the last id of the one before, no offset to skip over
+    List<PurchaseOrder> findAllByOrderByIdAsc(Pageable pageable);
+
+    List<PurchaseOrder> findByIdGreaterThanOrderByIdAsc(UUID after, Pageable pageable);
+
 }
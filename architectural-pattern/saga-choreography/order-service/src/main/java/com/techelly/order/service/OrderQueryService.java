@@ -1,21 +1,71 @@
 package com.techelly.order.service;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import com.techelly.order.dto.OrderPageDto;
 import com.techelly.order.entity.PurchaseOrder;
 import com.techelly.order.repository.PurchaseOrderRepository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Function;
 
+/*
+ * Orders are listed in pages ordered by id. A page is found through the primary key, however deep into the table it is,
+ * and orders written meanwhile neither shift nor repeat the pages still to come.
+ */
 @Service
 public class OrderQueryService {
 
+    @Value("${order.query.max-limit:1000}")
+    private int maxLimit;
+
+    @Value("${order.query.fetch-size:500}")
+    private int fetchSize;
+
     @Autowired
     private PurchaseOrderRepository purchaseOrderRepository;
 
-    public List<PurchaseOrder> getAll() {
-        return this.purchaseOrderRepository.findAll();
+    // the orders after the given id, the first ones without it. the limit is capped at max-limit
+    public Mono<OrderPageDto> getPage(final UUID after, final int limit) {
+        int size = Math.max(1, Math.min(limit, this.maxLimit));
+        return Mono.fromCallable(() -> {
+                    List<PurchaseOrder> orders = this.findPage(after, size);
+                    UUID next = orders.size() < size ? null : orders.get(orders.size() - 1).getId();
+                    return OrderPageDto.of(orders, next);
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /*
+     * All orders, read fetch-size at a time. The next page is read only once the previous one was written out,
+     * so a slow client holds back the reads and memory stays at about one page whatever the size of the table.
+     */
+    public Flux<PurchaseOrder> streamAll() {
+        return Flux.<List<PurchaseOrder>, Optional<UUID>>generate(Optional::empty, (after, sink) -> {
+                    List<PurchaseOrder> orders = this.findPage(after.orElse(null), this.fetchSize);
+                    if(!orders.isEmpty())
+                        sink.next(orders);
+                    if(orders.size() < this.fetchSize)
+                        sink.complete();
+                    return orders.isEmpty() ? after : Optional.of(orders.get(orders.size() - 1).getId());
+                })
+                .flatMapIterable(Function.identity(), 1)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private List<PurchaseOrder> findPage(final UUID after, final int size) {
+        PageRequest page = PageRequest.of(0, size);
+        return after == null
+                ? this.purchaseOrderRepository.findAllByOrderByIdAsc(page)
+                : this.purchaseOrderRepository.findByIdGreaterThanOrderByIdAsc(after, page);
     }
 
 }
@@ -1,29 +1,34 @@
 package com.techelly.order.service;
 
+import com.techelly.order.entity.OrderOutbox;
 import com.techelly.order.entity.PurchaseOrder;
-import com.techelly.dto.PurchaseOrderDto;
-import com.techelly.events.order.OrderEvent;
+import com.techelly.order.repository.OrderOutboxRepository;
+import com.techelly.events.EventIds;
 import com.techelly.events.order.OrderStatus;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import reactor.core.publisher.Sinks;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 @Service
 public class OrderStatusPublisher {
 
     @Autowired
-    private Sinks.Many<OrderEvent> orderSink;
+    private OrderOutboxRepository outboxRepository;
 
+    // the event is written to the outbox along with the order, OutboxRelay publishes it once the transaction commits
+    @Transactional(propagation = Propagation.MANDATORY)
     public void raiseOrderEvent(final PurchaseOrder purchaseOrder, OrderStatus orderStatus){
-        var dto = PurchaseOrderDto.of(
-                purchaseOrder.getId(),
-                purchaseOrder.getProductId(),
-                purchaseOrder.getPrice(),
-                purchaseOrder.getUserId()
-        );
-        var orderEvent = new OrderEvent(dto, orderStatus);
-        this.orderSink.tryEmitNext(orderEvent);
+        var outbox = new OrderOutbox();
+        outbox.setEventId(EventIds.next());
+        outbox.setCreatedAt(EventIds.timestamp(outbox.getEventId()));
+        outbox.setOrderId(purchaseOrder.getId());
+        outbox.setUserId(purchaseOrder.getUserId());
+        outbox.setProductId(purchaseOrder.getProductId());
+        outbox.setPrice(purchaseOrder.getPrice());
+        outbox.setOrderStatus(orderStatus);
+        this.outboxRepository.save(outbox);
     }
 
 }
@@ -0,0 +1,175 @@
+package com.techelly.order.service;
+
+import com.techelly.dto.PurchaseOrderDto;
+import com.techelly.events.order.OrderEvent;
+import com.techelly.order.entity.OrderOutbox;
+import com.techelly.order.repository.OrderOutboxRepository;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.integration.channel.DirectChannel;
+import org.springframework.integration.kafka.support.KafkaIntegrationHeaders;
+import org.springframework.integration.support.MessageBuilder;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/*
+ * Publishes the events of the outbox in the order they were written, which keeps the events of an order in order.
+ * Every poll relays batches of up to batch-size rows until the outbox is drained, each batch is marked sent with one update.
+ * The events of a batch are sent without waiting, then the relay waits for the broker to acknowledge all of them, so a
+ * batch costs about one round trip. The kafka producer hands the future of each send to sendFutures, see OutboxConfig,
+ * keyed by the id of the row. A binder which gives no future has sent the event by the time send() returns.
+ * Rows are marked up to the first event which is not acknowledged within ack-timeout, the rest is sent again by the
+ * next poll. A crash in between publishes them again as well. Consumers see every event at least once.
+ * The rows of a batch are locked until it is marked, so a relay of another instance waits for them.
+ * order.outbox.lag is the time from writing an event until it is relayed, order.outbox.batch.size the rows per batch.
+ * A shorter poll-interval lowers the lag, a larger batch-size costs fewer round trips under load.
+ */
+@Component
+public class OutboxRelay {
+
+    private static final String ORDER_EVENT_BINDING = "orderEvent-out-0";
+
+    @Value("${order.outbox.batch-size:100}")
+    private int batchSize;
+
+    @Value("${order.outbox.retention:1h}")
+    private Duration retention;
+
+    @Value("${order.outbox.ack-timeout:10s}")
+    private Duration ackTimeout;
+
+    @Autowired
+    private OrderOutboxRepository outboxRepository;
+
+    @Autowired
+    private StreamBridge streamBridge;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry registry;
+
+    // filled on the relay thread while it sends, the kafka producer hands over the futures from inside send()
+    private final Map<Object, ListenableFuture<?>> sendFutures = new ConcurrentHashMap<>();
+    private final DirectChannel sendFutureChannel = new DirectChannel();
+    private TransactionTemplate transactionTemplate;
+    private Timer lag;
+    private DistributionSummary batchSizes;
+
+    @PostConstruct
+    public void init(){
+        this.transactionTemplate = new TransactionTemplate(this.transactionManager);
+        this.sendFutureChannel.subscribe(message -> this.sendFutures.put(
+                message.getHeaders().get(KafkaIntegrationHeaders.FUTURE_TOKEN), (ListenableFuture<?>) message.getPayload()));
+        this.lag = Timer.builder("order.outbox.lag")
+                .description("time from writing an event to the outbox until it is relayed")
+                .publishPercentileHistogram()
+                .register(this.registry);
+        this.batchSizes = DistributionSummary.builder("order.outbox.batch.size")
+                .description("events relayed per batch")
+                .register(this.registry);
+    }
+
+    public MessageChannel getSendFutureChannel(){
+        return this.sendFutureChannel;
+    }
+
+    @Scheduled(fixedDelayString = "${order.outbox.poll-interval:100}")
+    public void relay(){
+        Integer relayed;
+        do {
+            relayed = this.transactionTemplate.execute(status -> this.relayBatch());
+        } while(relayed != null && relayed == this.batchSize);
+    }
+
+    @Scheduled(fixedDelayString = "${order.outbox.purge-interval:60000}")
+    public void purge(){
+        this.transactionTemplate.executeWithoutResult(status ->
+                this.outboxRepository.deleteSentBefore(Instant.now().minus(this.retention)));
+    }
+
+    // returns the number of rows relayed, stops at the first event the broker does not acknowledge
+    private int relayBatch(){
+        List<OrderOutbox> pending = this.outboxRepository.findBySentFalseOrderByIdAsc(PageRequest.of(0, this.batchSize));
+        if(pending.isEmpty())
+            return 0;
+        int handedOver = 0;
+        while(handedOver < pending.size() && this.send(pending.get(handedOver)))
+            handedOver++;
+        List<Long> sent = new ArrayList<>(handedOver);
+        long waitUntil = System.nanoTime() + this.ackTimeout.toNanos();
+        for(OrderOutbox outbox : pending.subList(0, handedOver)){
+            if(!this.acknowledged(outbox.getId(), waitUntil))
+                break;
+            sent.add(outbox.getId());
+        }
+        this.sendFutures.clear();
+        Instant now = Instant.now();
+        for(OrderOutbox outbox : pending.subList(0, sent.size()))
+            this.lag.record(Duration.between(outbox.getCreatedAt(), now));
+        if(!sent.isEmpty())
+            this.outboxRepository.markSent(sent);
+        this.batchSizes.record(sent.size());
+        return sent.size() == pending.size() ? sent.size() : 0;
+    }
+
+    // a send the binder rejected right away throws, the row then stays pending for the next poll
+    private boolean send(OrderOutbox outbox){
+        try {
+            return this.streamBridge.send(ORDER_EVENT_BINDING, MessageBuilder.withPayload(this.toEvent(outbox))
+                    .setHeader(KafkaIntegrationHeaders.FUTURE_TOKEN, outbox.getId())
+                    .build());
+        } catch (RuntimeException ex) {
+            return false;
+        }
+    }
+
+    private boolean acknowledged(Long id, long waitUntil){
+        ListenableFuture<?> future = this.sendFutures.remove(id);
+        if(future == null)
+            return true;
+        try {
+            future.get(Math.max(0, waitUntil - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return true;
+        } catch (ExecutionException | TimeoutException ex) {
+            return false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // the event keeps the id and date it got when it was written
+    private OrderEvent toEvent(final OrderOutbox outbox){
+        var dto = PurchaseOrderDto.of(outbox.getOrderId(), outbox.getProductId(), outbox.getPrice(), outbox.getUserId());
+        var orderEvent = new OrderEvent();
+        orderEvent.setEventId(outbox.getEventId());
+        orderEvent.setDate(outbox.getCreatedAt());
+        orderEvent.setPurchaseOrder(dto);
+        orderEvent.setOrderStatus(outbox.getOrderStatus());
+        return orderEvent;
+    }
+
+}
@@ -1,16 +1,22 @@
 package com.techelly.payment.config;
 
+import com.techelly.events.EventDeduplicator;
+import com.techelly.offload.BlockingOffload;
 import com.techelly.payment.service.PaymentService;
 import com.techelly.events.order.OrderEvent;
 import com.techelly.events.order.OrderStatus;
 import com.techelly.events.payment.PaymentEvent;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
 import java.util.function.Function;
 
 @Configuration
@@ -19,9 +25,33 @@ public class PaymentConfig {
     @Autowired
     private PaymentService service;
 
+    // threads should match the connection pool, lanes cap the events in flight
     @Bean
-    public Function<Flux<OrderEvent>, Flux<PaymentEvent>> paymentProcessor() {
-        return flux -> flux.flatMap(this::processPayment);
+    public BlockingOffload paymentOffload(@Value("${offload.threads:10}") int threads,
+                                          @Value("${offload.lanes:32}") int lanes,
+                                          MeterRegistry registry){
+        return new BlockingOffload("payment", threads, lanes, registry);
+    }
+
+    // drops redelivered order events before any database work
+    @Bean
+    public EventDeduplicator paymentDedupe(@Value("${dedupe.memory:1MB}") DataSize memory,
+                                           @Value("${dedupe.window:10m}") Duration window,
+                                           @Value("${dedupe.lru-size:10000}") int lruSize,
+                                           MeterRegistry registry){
+        return new EventDeduplicator("payment", memory.toBytes(), window, lruSize, registry);
+    }
+
+    /*
+     * The transactions block, so they run on the offload pool. Lanes are picked by user, so the balance of a user is
+     * updated by one transaction at a time, and the events of an order, which all belong to its user, stay in order.
+     * Duplicates are dropped in their lane before the transaction starts, an event counts as processed once it committed.
+     */
+    @Bean
+    public Function<Flux<OrderEvent>, Flux<PaymentEvent>> paymentProcessor(BlockingOffload paymentOffload,
+                                                                          EventDeduplicator paymentDedupe) {
+        return flux -> paymentOffload.process(flux, event -> event.getPurchaseOrder().getUserId(),
+                event -> paymentDedupe.processOnce(event.getEventId(), () -> this.processPayment(event)));
     }
 
     private Mono<PaymentEvent> processPayment(OrderEvent event){
@@ -0,0 +1,54 @@
+package com.techelly.benchmark;
+
+import lombok.Data;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * Result of one benchmark run. It is written out as json, so runs of different releases can be compared.
+ * Latencies are the time from placing an order until it is completed or cancelled, in milliseconds, and only cover
+ * the orders placed after the warmup. Retries are counted after the warmup as well: optimistic lock retries are the
+ * order updates which lost on the version of the order, binder retries are the deliveries the binder tried again.
+ * Payment changes a balance in one transaction per user at a time and inventory changes stock with conditional
+ * updates, so neither has conflicts to retry.
+ */
+@Data
+public class BenchmarkReport {
+
+    private Map<String, Object> settings = new LinkedHashMap<>();
+    private long sent;
+    private long completed;
+    private long cancelled;
+    private long lost;
+    private double offeredRate;
+    private double throughput;
+    private double compensationRate;
+    private double optimisticLockRetries;
+    private double binderRetries;
+    private double latencyP50;
+    private double latencyP99;
+    private double latencyP999;
+    private double latencyMax;
+
+    // latencies are in nanos. the array is sorted in place
+    public void setLatencies(long[] latencies, int count) {
+        if(count == 0)
+            return;
+        Arrays.sort(latencies, 0, count);
+        this.latencyP50 = millis(latencies[percentileIndex(0.5, count)]);
+        this.latencyP99 = millis(latencies[percentileIndex(0.99, count)]);
+        this.latencyP999 = millis(latencies[percentileIndex(0.999, count)]);
+        this.latencyMax = millis(latencies[count - 1]);
+    }
+
+    private static int percentileIndex(double percentile, int count) {
+        return Math.min(count - 1, (int) Math.ceil(percentile * count) - 1);
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000d;
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.techelly.benchmark;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cloud.stream.annotation.StreamRetryTemplate;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.RetryContext;
+import org.springframework.retry.backoff.ExponentialBackOffPolicy;
+import org.springframework.retry.listener.RetryListenerSupport;
+import org.springframework.retry.policy.SimpleRetryPolicy;
+import org.springframework.retry.support.RetryTemplate;
+
+/*
+ * The retry template of all consumer bindings in the benchmark: the binder's default policy, 3 attempts backing off
+ * from 1s up to 10s, with a listener counting the attempts which failed and are tried again as benchmark.binder.retries.
+ * Only the consumers of order-service have binder retries, payment and inventory process their events in reactive
+ * functions, which the binder does not retry.
+ */
+@Configuration
+public class BinderRetries {
+
+    static final String RETRIES = "benchmark.binder.retries";
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    @StreamRetryTemplate
+    public RetryTemplate binderRetryTemplate(MeterRegistry registry) {
+        Counter retries = Counter.builder(RETRIES)
+                .description("deliveries which failed and are retried by the binder")
+                .register(registry);
+        ExponentialBackOffPolicy backOff = new ExponentialBackOffPolicy();
+        backOff.setInitialInterval(1000);
+        backOff.setMultiplier(2.0);
+        backOff.setMaxInterval(10000);
+        RetryTemplate retryTemplate = new RetryTemplate();
+        retryTemplate.setRetryPolicy(new SimpleRetryPolicy(MAX_ATTEMPTS));
+        retryTemplate.setBackOffPolicy(backOff);
+        retryTemplate.registerListener(new RetryListenerSupport() {
+            @Override
+            public <T, E extends Throwable> void onError(RetryContext context, RetryCallback<T, E> callback, Throwable throwable) {
+                // the failed attempt is counted already, the last one goes to the error channel instead
+                if(context.getRetryCount() < MAX_ATTEMPTS)
+                    retries.increment();
+            }
+        });
+        return retryTemplate;
+    }
+
+}
@@ -0,0 +1,315 @@
+package com.techelly.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.techelly.dto.OrderRequestDto;
+import com.techelly.events.order.OrderStatus;
+import com.techelly.inventory.InventoryApplication;
+import com.techelly.inventory.entity.OrderInventory;
+import com.techelly.inventory.repository.OrderInventoryRepository;
+import com.techelly.order.OrderServiceApplication;
+import com.techelly.order.entity.PurchaseOrder;
+import com.techelly.order.service.OrderCommandService;
+import com.techelly.payment.PaymentApplication;
+import com.techelly.payment.entity.UserBalance;
+import com.techelly.payment.repository.UserBalanceRepository;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.cloud.stream.binder.test.OutputDestination;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+
+import javax.persistence.EntityManagerFactory;
+import java.io.File;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/*
+ * Load test for the whole choreography, without kafka.
+ * Order, payment and inventory service run in one context. The in-memory test binder carries their events and all
+ * three share an embedded H2 database. Orders are placed through OrderCommandService at a fixed rate, independent of
+ * how fast they finish, so queueing shows up in the latencies instead of lowering the rate.
+ * An order is finished once its completed or cancelled status is committed.
+ *
+ * Users and products are picked with a zipf skew: 0 is uniform, the larger the skew the more orders go to the
+ * first users and products. The products are the ones order-service has a price for.
+ *
+ * All options are passed as --key=value. The benchmark.* ones are listed below, everything else goes to the
+ * services, e.g. --order.join.enabled=false, --inventory.lease.enabled=true or --offload.lanes=64.
+ *
+ *   java -jar saga-benchmark/target/saga-benchmark-0.0.1-SNAPSHOT.jar --benchmark.rate=500 --benchmark.product-skew=1.5
+ */
+public class SagaBenchmark {
+
+    private static final String CONFLICTS = "order.update.conflicts";
+    private static final List<String> DESTINATIONS = List.of("order-event", "payment-event", "inventory-event");
+
+    public static void main(String[] args) throws Exception {
+        SimpleCommandLinePropertySource options = new SimpleCommandLinePropertySource(args);
+        int rate = option(options, "benchmark.rate", Integer.class, 500);
+        Duration duration = option(options, "benchmark.duration", Duration.class, Duration.ofSeconds(30));
+        Duration warmup = option(options, "benchmark.warmup", Duration.class, Duration.ofSeconds(5));
+        Duration drainTimeout = option(options, "benchmark.drain-timeout", Duration.class, Duration.ofSeconds(30));
+        int users = option(options, "benchmark.users", Integer.class, 1000);
+        double userSkew = option(options, "benchmark.user-skew", Double.class, 0d);
+        double productSkew = option(options, "benchmark.product-skew", Double.class, 0d);
+        int balance = option(options, "benchmark.balance", Integer.class, 1_000_000);
+        int stock = option(options, "benchmark.stock", Integer.class, 1_000_000);
+        File output = new File(option(options, "benchmark.output", String.class, "saga-benchmark.json"));
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(TestChannelBinderConfiguration.getCompleteConfiguration(
+                OrderServiceApplication.class, PaymentApplication.class, InventoryApplication.class, BinderRetries.class))
+                .web(WebApplicationType.NONE)
+                .properties("spring.config.name=saga-benchmark")
+                .run(args);
+        try {
+            @SuppressWarnings("unchecked")
+            List<Integer> products = ((Map<Integer, Integer>) context.getBean("productPrice", Map.class)).keySet().stream()
+                    .sorted()
+                    .collect(Collectors.toList());
+            context.getBean(UserBalanceRepository.class).saveAll(IntStream.rangeClosed(1, users)
+                    .mapToObj(userId -> new UserBalance(userId, balance))
+                    .collect(Collectors.toList()));
+            context.getBean(OrderInventoryRepository.class).saveAll(products.stream()
+                    .map(productId -> OrderInventory.of(productId, stock))
+                    .collect(Collectors.toList()));
+
+            int total = (int) (rate * duration.toMillis() / 1000);
+            int warmupCount = (int) (rate * warmup.toMillis() / 1000);
+            Run run = new Run(context.getBean(OrderCommandService.class), context.getBean(OutputDestination.class),
+                    context.getBean(MeterRegistry.class), new Skewed(users, userSkew), new Skewed(products.size(), productSkew), products);
+            context.getBean(EntityManagerFactory.class)
+                    .unwrap(SessionFactoryImplementor.class)
+                    .getServiceRegistry()
+                    .getService(EventListenerRegistry.class)
+                    .appendListeners(EventType.POST_COMMIT_UPDATE, new FinalStatusListener(run));
+            BenchmarkReport report = run.execute(rate, total, warmupCount, drainTimeout);
+            Map<String, Object> settings = report.getSettings();
+            settings.put("rate", rate);
+            settings.put("duration", duration.toString());
+            settings.put("warmup", warmup.toString());
+            settings.put("users", users);
+            settings.put("userSkew", userSkew);
+            settings.put("products", products.size());
+            settings.put("productSkew", productSkew);
+            settings.put("balance", balance);
+            settings.put("stock", stock);
+            for(String property : List.of("order.join.enabled", "inventory.batch.enabled", "inventory.lease.enabled", "offload.threads", "offload.lanes"))
+                settings.put(property, context.getEnvironment().getProperty(property));
+            ObjectMapper mapper = new ObjectMapper();
+            mapper.enable(SerializationFeature.INDENT_OUTPUT).writeValue(output, report);
+            System.out.println(mapper.writeValueAsString(report));
+        } finally {
+            context.close();
+        }
+    }
+
+    private static <T> T option(SimpleCommandLinePropertySource options, String name, Class<T> type, T defaultValue) {
+        String value = options.getProperty(name);
+        return value == null ? defaultValue : ApplicationConversionService.getSharedInstance().convert(value, type);
+    }
+
+    // one pass over the orders. the sender thread places them at the rate, the committing threads report them finished
+    private static class Run {
+
+        private final OrderCommandService commandService;
+        private final OutputDestination output;
+        private final MeterRegistry registry;
+        private final Skewed users;
+        private final Skewed products;
+        private final List<Integer> productIds;
+        private final Map<UUID, Long> started = new ConcurrentHashMap<>();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong cancelled = new AtomicLong();
+        private final AtomicLong lastFinished = new AtomicLong();
+        private final AtomicInteger measured = new AtomicInteger();
+        private volatile long[] latencies;
+        private volatile long measureFrom = Long.MAX_VALUE;
+        private volatile double conflictsBefore;
+        private volatile double retriesBefore;
+
+        private Run(OrderCommandService commandService, OutputDestination output, MeterRegistry registry,
+                    Skewed users, Skewed products, List<Integer> productIds) {
+            this.commandService = commandService;
+            this.output = output;
+            this.registry = registry;
+            this.users = users;
+            this.products = products;
+            this.productIds = productIds;
+        }
+
+        private BenchmarkReport execute(int rate, int total, int warmupCount, Duration drainTimeout) throws InterruptedException {
+            this.latencies = new long[total];
+            Thread sender = new Thread(() -> this.send(rate, total, warmupCount), "saga-benchmark-sender");
+            long start = System.nanoTime();
+            this.lastFinished.set(start);
+            sender.start();
+
+            while(this.completed.get() + this.cancelled.get() < total
+                    && (sender.isAlive() || System.nanoTime() - this.lastFinished.get() < drainTimeout.toNanos())){
+                Thread.sleep(100);
+                this.dropCopies();
+            }
+            sender.join();
+
+            long completed = this.completed.get();
+            long cancelled = this.cancelled.get();
+            int measured = Math.min(this.measured.get(), total);
+            BenchmarkReport report = new BenchmarkReport();
+            report.setSent(total);
+            report.setCompleted(completed);
+            report.setCancelled(cancelled);
+            report.setLost(total - completed - cancelled);
+            report.setOfferedRate(rate);
+            double measuredSeconds = (this.lastFinished.get() - this.measureFrom) / 1e9;
+            report.setThroughput(measuredSeconds > 0 ? measured / measuredSeconds : 0);
+            report.setCompensationRate(completed + cancelled == 0 ? 0 : (double) cancelled / (completed + cancelled));
+            report.setOptimisticLockRetries(this.conflicts() - this.conflictsBefore);
+            report.setBinderRetries(this.count(BinderRetries.RETRIES) - this.retriesBefore);
+            report.setLatencies(this.latencies, measured);
+            return report;
+        }
+
+        // the services consume the events themselves, the copies the test binder keeps of them are dropped
+        private void dropCopies() {
+            for(String destination : DESTINATIONS){
+                while(this.output.receive(0, destination) != null);
+            }
+        }
+
+        private void send(int rate, int total, int warmupCount) {
+            long start = System.nanoTime();
+            int sent = 0;
+            while(sent < total){
+                long due = Math.min(total, (System.nanoTime() - start) * rate / 1_000_000_000L);
+                for(; sent < due; sent++){
+                    if(sent == warmupCount){
+                        this.conflictsBefore = this.conflicts();
+                        this.retriesBefore = this.count(BinderRetries.RETRIES);
+                        this.measureFrom = System.nanoTime();
+                    }
+                    this.placeOrder();
+                }
+                LockSupport.parkNanos(50_000);
+            }
+        }
+
+        private void placeOrder() {
+            OrderRequestDto requestDTO = new OrderRequestDto();
+            requestDTO.setOrderId(UUID.randomUUID());
+            requestDTO.setUserId(this.users.next() + 1);
+            requestDTO.setProductId(this.productIds.get(this.products.next()));
+            this.started.put(requestDTO.getOrderId(), System.nanoTime());
+            this.commandService.createOrder(requestDTO);
+        }
+
+        // called once the final status of an order is committed
+        private void finished(UUID orderId, OrderStatus orderStatus) {
+            Long sentAt = this.started.remove(orderId);
+            if(sentAt == null)
+                return;
+            long now = System.nanoTime();
+            this.lastFinished.accumulateAndGet(now, Math::max);
+            if(orderStatus == OrderStatus.ORDER_COMPLETED)
+                this.completed.incrementAndGet();
+            else
+                this.cancelled.incrementAndGet();
+            if(sentAt >= this.measureFrom){
+                int index = this.measured.getAndIncrement();
+                if(index < this.latencies.length)
+                    this.latencies[index] = now - sentAt;
+            }
+        }
+
+        private double conflicts() {
+            return this.count(CONFLICTS);
+        }
+
+        private double count(String name) {
+            Counter counter = this.registry.find(name).counter();
+            return counter == null ? 0 : counter.count();
+        }
+
+    }
+
+    // reports orders whose completed or cancelled status was committed. updates which roll back are not reported
+    private static class FinalStatusListener implements PostCommitUpdateEventListener {
+
+        private final Run run;
+
+        private FinalStatusListener(Run run) {
+            this.run = run;
+        }
+
+        @Override
+        public void onPostUpdate(PostUpdateEvent event) {
+            if(!(event.getEntity() instanceof PurchaseOrder))
+                return;
+            PurchaseOrder purchaseOrder = (PurchaseOrder) event.getEntity();
+            if(purchaseOrder.getOrderStatus() == OrderStatus.ORDER_COMPLETED || purchaseOrder.getOrderStatus() == OrderStatus.ORDER_CANCELLED)
+                this.run.finished(purchaseOrder.getId(), purchaseOrder.getOrderStatus());
+        }
+
+        @Override
+        public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+        }
+
+        @Override
+        public boolean requiresPostCommitHandling(EntityPersister persister) {
+            return true;
+        }
+
+        // still abstract in hibernate 5.4, which only calls the one above
+        @Override
+        @SuppressWarnings("deprecation")
+        public boolean requiresPostCommitHanding(EntityPersister persister) {
+            return this.requiresPostCommitHandling(persister);
+        }
+
+    }
+
+    // picks 0 to size - 1, index i with a weight of 1 / (i + 1) ^ exponent
+    private static class Skewed {
+
+        private final double[] cumulative;
+
+        private Skewed(int size, double exponent) {
+            this.cumulative = new double[size];
+            double sum = 0;
+            for(int i = 0; i < size; i++){
+                sum += 1 / Math.pow(i + 1, exponent);
+                this.cumulative[i] = sum;
+            }
+            for(int i = 0; i < size; i++)
+                this.cumulative[i] /= sum;
+        }
+
+        private int next() {
+            int index = Arrays.binarySearch(this.cumulative, ThreadLocalRandom.current().nextDouble());
+            return Math.min(this.cumulative.length - 1, index >= 0 ? index : -index - 1);
+        }
+
+    }
+
+}
@@ -0,0 +1,319 @@
+package com.techelly.codec;
+
+import com.techelly.dto.InventoryRequestDTO;
+import com.techelly.dto.InventoryResponseDTO;
+import com.techelly.dto.OrchestratorRequestDTO;
+import com.techelly.dto.OrchestratorResponseDTO;
+import com.techelly.dto.OrderRequestDTO;
+import com.techelly.dto.OrderResponseDTO;
+import com.techelly.dto.PaymentRequestDTO;
+import com.techelly.dto.PaymentResponseDTO;
+import com.techelly.enums.InventoryStatus;
+import com.techelly.enums.OrderStatus;
+import com.techelly.enums.PaymentStatus;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/*
+ * Compact binary form of the common dto classes.
+ *
+ *   version | type id | field count | presence bitmap | fields
+ *
+ * Uuids are written as two fixed width longs, ints as zigzag varints, doubles as their 8 raw bytes and enums as
+ * varint ordinals. Null fields are only marked in the bitmap.
+ * Fields are written in the order they are declared below, and a type may only get new fields appended at the end.
+ * An older reader then simply stops after the fields it knows, and a newer reader leaves the missing ones null.
+ * Type ids and enum constant order must never change.
+ */
+public final class SagaBinaryCodec {
+
+    public static final int VERSION = 1;
+
+    private static final Map<Class<?>, Schema<?>> BY_CLASS = new HashMap<>();
+    private static final Schema<?>[] BY_ID = new Schema<?>[16];
+
+    static {
+        register(new Schema<>(1, OrchestratorRequestDTO.class, OrchestratorRequestDTO::new, List.of(
+                Field.integer(OrchestratorRequestDTO::getUserId, OrchestratorRequestDTO::setUserId),
+                Field.integer(OrchestratorRequestDTO::getProductId, OrchestratorRequestDTO::setProductId),
+                Field.uuid(OrchestratorRequestDTO::getOrderId, OrchestratorRequestDTO::setOrderId),
+                Field.decimal(OrchestratorRequestDTO::getAmount, OrchestratorRequestDTO::setAmount))));
+        register(new Schema<>(2, OrchestratorResponseDTO.class, OrchestratorResponseDTO::new, List.of(
+                Field.integer(OrchestratorResponseDTO::getUserId, OrchestratorResponseDTO::setUserId),
+                Field.integer(OrchestratorResponseDTO::getProductId, OrchestratorResponseDTO::setProductId),
+                Field.uuid(OrchestratorResponseDTO::getOrderId, OrchestratorResponseDTO::setOrderId),
+                Field.decimal(OrchestratorResponseDTO::getAmount, OrchestratorResponseDTO::setAmount),
+                Field.enumeration(OrderStatus.values(), OrchestratorResponseDTO::getStatus, OrchestratorResponseDTO::setStatus))));
+        register(new Schema<>(3, OrderRequestDTO.class, OrderRequestDTO::new, List.of(
+                Field.integer(OrderRequestDTO::getUserId, OrderRequestDTO::setUserId),
+                Field.integer(OrderRequestDTO::getProductId, OrderRequestDTO::setProductId),
+                Field.uuid(OrderRequestDTO::getOrderId, OrderRequestDTO::setOrderId))));
+        register(new Schema<>(4, OrderResponseDTO.class, OrderResponseDTO::new, List.of(
+                Field.uuid(OrderResponseDTO::getOrderId, OrderResponseDTO::setOrderId),
+                Field.integer(OrderResponseDTO::getUserId, OrderResponseDTO::setUserId),
+                Field.integer(OrderResponseDTO::getProductId, OrderResponseDTO::setProductId),
+                Field.decimal(OrderResponseDTO::getAmount, OrderResponseDTO::setAmount),
+                Field.enumeration(OrderStatus.values(), OrderResponseDTO::getStatus, OrderResponseDTO::setStatus))));
+        register(new Schema<>(5, PaymentRequestDTO.class, PaymentRequestDTO::new, List.of(
+                Field.integer(PaymentRequestDTO::getUserId, PaymentRequestDTO::setUserId),
+                Field.uuid(PaymentRequestDTO::getOrderId, PaymentRequestDTO::setOrderId),
+                Field.decimal(PaymentRequestDTO::getAmount, PaymentRequestDTO::setAmount))));
+        register(new Schema<>(6, PaymentResponseDTO.class, PaymentResponseDTO::new, List.of(
+                Field.integer(PaymentResponseDTO::getUserId, PaymentResponseDTO::setUserId),
+                Field.uuid(PaymentResponseDTO::getOrderId, PaymentResponseDTO::setOrderId),
+                Field.decimal(PaymentResponseDTO::getAmount, PaymentResponseDTO::setAmount),
+                Field.enumeration(PaymentStatus.values(), PaymentResponseDTO::getStatus, PaymentResponseDTO::setStatus))));
+        register(new Schema<>(7, InventoryRequestDTO.class, InventoryRequestDTO::new, List.of(
+                Field.integer(InventoryRequestDTO::getUserId, InventoryRequestDTO::setUserId),
+                Field.integer(InventoryRequestDTO::getProductId, InventoryRequestDTO::setProductId),
+                Field.uuid(InventoryRequestDTO::getOrderId, InventoryRequestDTO::setOrderId))));
+        register(new Schema<>(8, InventoryResponseDTO.class, InventoryResponseDTO::new, List.of(
+                Field.uuid(InventoryResponseDTO::getOrderId, InventoryResponseDTO::setOrderId),
+                Field.integer(InventoryResponseDTO::getUserId, InventoryResponseDTO::setUserId),
+                Field.integer(InventoryResponseDTO::getProductId, InventoryResponseDTO::setProductId),
+                Field.enumeration(InventoryStatus.values(), InventoryResponseDTO::getStatus, InventoryResponseDTO::setStatus))));
+    }
+
+    private SagaBinaryCodec() {
+    }
+
+    public static boolean supports(final Class<?> type) {
+        return BY_CLASS.containsKey(type);
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> byte[] encode(final T value) {
+        Schema<T> schema = (Schema<T>) BY_CLASS.get(value.getClass());
+        if(schema == null)
+            throw new IllegalArgumentException("no binary schema for " + value.getClass().getName());
+        return schema.encode(value);
+    }
+
+    public static <T> T decode(final byte[] bytes, final Class<T> type) {
+        if(bytes.length < 3)
+            throw new IllegalArgumentException("truncated message of " + bytes.length + " bytes");
+        if(bytes[0] < 1 || bytes[0] > VERSION)
+            throw new IllegalArgumentException("unsupported codec version " + bytes[0]);
+        int typeId = bytes[1];
+        Schema<?> schema = typeId > 0 && typeId < BY_ID.length ? BY_ID[typeId] : null;
+        if(schema == null || schema.type != type)
+            throw new IllegalArgumentException("message of type id " + typeId + " can not be read as " + type.getName());
+        try {
+            return type.cast(schema.decode(bytes));
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("truncated message of " + bytes.length + " bytes", e);
+        }
+    }
+
+    private static void register(final Schema<?> schema) {
+        BY_CLASS.put(schema.type, schema);
+        BY_ID[schema.id] = schema;
+    }
+
+    private static final class Schema<T> {
+
+        private final int id;
+        private final Class<T> type;
+        private final Supplier<T> factory;
+        private final List<Field<T, ?>> fields;
+        private final int bitmapSize;
+
+        private Schema(int id, Class<T> type, Supplier<T> factory, List<Field<T, ?>> fields) {
+            this.id = id;
+            this.type = type;
+            this.factory = factory;
+            this.fields = fields;
+            this.bitmapSize = (fields.size() + 7) / 8;
+        }
+
+        // sizes the message first, so it is written straight into an array of the exact length
+        private byte[] encode(final T value) {
+            int size = 3 + this.bitmapSize;
+            for(Field<T, ?> field : this.fields)
+                size += field.size(value);
+            Writer writer = new Writer(new byte[size]);
+            writer.put(VERSION);
+            writer.put(this.id);
+            writer.put(this.fields.size());
+            for(int i = 0; i < this.bitmapSize; i++){
+                int bits = 0;
+                for(int bit = 0; bit < 8 && i * 8 + bit < this.fields.size(); bit++){
+                    if(this.fields.get(i * 8 + bit).isPresent(value))
+                        bits |= 1 << bit;
+                }
+                writer.put(bits);
+            }
+            for(Field<T, ?> field : this.fields)
+                field.write(value, writer);
+            return writer.bytes;
+        }
+
+        private T decode(final byte[] bytes) {
+            int written = bytes[2] & 0xFF;
+            Reader reader = new Reader(bytes, 3);
+            int bitmapStart = reader.position;
+            reader.position += (written + 7) / 8;
+            T value = this.factory.get();
+            int known = Math.min(written, this.fields.size());
+            for(int i = 0; i < known; i++){
+                if((bytes[bitmapStart + i / 8] & (1 << (i % 8))) != 0)
+                    this.fields.get(i).read(value, reader);
+            }
+            return value;
+        }
+
+    }
+
+    private static final class Field<T, V> {
+
+        private final Function<T, V> getter;
+        private final BiConsumer<T, V> setter;
+        private final Kind<V> kind;
+
+        private Field(Function<T, V> getter, BiConsumer<T, V> setter, Kind<V> kind) {
+            this.getter = getter;
+            this.setter = setter;
+            this.kind = kind;
+        }
+
+        private static <T> Field<T, Integer> integer(Function<T, Integer> getter, BiConsumer<T, Integer> setter) {
+            return new Field<>(getter, setter, new Kind<>() {
+                int size(Integer v) { return Writer.varintSize(zigzag(v)); }
+                void write(Integer v, Writer w) { w.putVarint(zigzag(v)); }
+                Integer read(Reader r) { int n = r.getVarint(); return (n >>> 1) ^ -(n & 1); }
+            });
+        }
+
+        private static <T> Field<T, UUID> uuid(Function<T, UUID> getter, BiConsumer<T, UUID> setter) {
+            return new Field<>(getter, setter, new Kind<>() {
+                int size(UUID v) { return 16; }
+                void write(UUID v, Writer w) { w.putLong(v.getMostSignificantBits()); w.putLong(v.getLeastSignificantBits()); }
+                UUID read(Reader r) { return new UUID(r.getLong(), r.getLong()); }
+            });
+        }
+
+        private static <T> Field<T, Double> decimal(Function<T, Double> getter, BiConsumer<T, Double> setter) {
+            return new Field<>(getter, setter, new Kind<>() {
+                int size(Double v) { return 8; }
+                void write(Double v, Writer w) { w.putLong(Double.doubleToRawLongBits(v)); }
+                Double read(Reader r) { return Double.longBitsToDouble(r.getLong()); }
+            });
+        }
+
+        private static <T, E extends Enum<E>> Field<T, E> enumeration(E[] constants, Function<T, E> getter, BiConsumer<T, E> setter) {
+            return new Field<>(getter, setter, new Kind<>() {
+                int size(E v) { return Writer.varintSize(v.ordinal()); }
+                void write(E v, Writer w) { w.putVarint(v.ordinal()); }
+                E read(Reader r) {
+                    int ordinal = r.getVarint();
+                    if(ordinal >= constants.length)
+                        throw new IllegalArgumentException("unknown " + constants[0].getDeclaringClass().getSimpleName() + " ordinal " + ordinal);
+                    return constants[ordinal];
+                }
+            });
+        }
+
+        private static int zigzag(int v) {
+            return (v << 1) ^ (v >> 31);
+        }
+
+        private boolean isPresent(T value) {
+            return this.getter.apply(value) != null;
+        }
+
+        private int size(T value) {
+            V v = this.getter.apply(value);
+            return v == null ? 0 : this.kind.size(v);
+        }
+
+        private void write(T value, Writer writer) {
+            V v = this.getter.apply(value);
+            if(v != null)
+                this.kind.write(v, writer);
+        }
+
+        private void read(T value, Reader reader) {
+            this.setter.accept(value, this.kind.read(reader));
+        }
+
+    }
+
+    private abstract static class Kind<V> {
+
+        abstract int size(V value);
+
+        abstract void write(V value, Writer writer);
+
+        abstract V read(Reader reader);
+
+    }
+
+    private static final class Writer {
+
+        private final byte[] bytes;
+        private int position;
+
+        private Writer(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        private static int varintSize(int v) {
+            return v == 0 ? 1 : (31 - Integer.numberOfLeadingZeros(v)) / 7 + 1;
+        }
+
+        private void put(int b) {
+            this.bytes[this.position++] = (byte) b;
+        }
+
+        private void putVarint(int v) {
+            while((v & ~0x7F) != 0){
+                this.put((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            this.put(v);
+        }
+
+        private void putLong(long v) {
+            for(int shift = 56; shift >= 0; shift -= 8)
+                this.put((int) (v >>> shift));
+        }
+
+    }
+
+    private static final class Reader {
+
+        private final byte[] bytes;
+        private int position;
+
+        private Reader(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        private int getVarint() {
+            int v = 0;
+            for(int shift = 0; shift < 35; shift += 7){
+                byte b = this.bytes[this.position++];
+                v |= (b & 0x7F) << shift;
+                if(b >= 0)
+                    return v;
+            }
+            throw new IllegalArgumentException("malformed varint");
+        }
+
+        private long getLong() {
+            long v = 0;
+            for(int i = 0; i < 8; i++)
+                v = (v << 8) | (this.bytes[this.position++] & 0xFF);
+            return v;
+        }
+
+    }
+
+}
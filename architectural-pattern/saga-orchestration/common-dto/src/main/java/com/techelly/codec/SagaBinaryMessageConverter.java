@@ -0,0 +1,36 @@
+package com.techelly.codec;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.util.MimeType;
+
+/*
+ * Spring Cloud Stream converter for SagaBinaryCodec. It is picked for bindings with
+ * content-type: application/x-saga-binary, and for incoming messages carrying that content type header.
+ */
+public class SagaBinaryMessageConverter extends AbstractMessageConverter {
+
+    public static final MimeType MIME_TYPE = new MimeType("application", "x-saga-binary");
+
+    public SagaBinaryMessageConverter() {
+        super(MIME_TYPE);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return SagaBinaryCodec.supports(clazz);
+    }
+
+    @Override
+    protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+        Object payload = message.getPayload();
+        return payload instanceof byte[] ? SagaBinaryCodec.decode((byte[]) payload, targetClass) : null;
+    }
+
+    @Override
+    protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+        return SagaBinaryCodec.encode(payload);
+    }
+
+}
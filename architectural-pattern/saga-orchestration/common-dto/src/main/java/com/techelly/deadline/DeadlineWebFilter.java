@@ -0,0 +1,35 @@
+package com.techelly.deadline;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+import reactor.core.publisher.Mono;
+
+/*
+ * Rejects requests whose saga deadline has already passed, so no work is spent on abandoned sagas.
+ * The deadline is an epoch millis timestamp, so the hosts' clocks are expected to be roughly in sync.
+ */
+public class DeadlineWebFilter implements WebFilter {
+
+    public static final String HEADER = "X-Saga-Deadline";
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        String deadline = exchange.getRequest().getHeaders().getFirst(HEADER);
+        if(deadline != null && isExpired(deadline)){
+            exchange.getResponse().setStatusCode(HttpStatus.GATEWAY_TIMEOUT);
+            return exchange.getResponse().setComplete();
+        }
+        return chain.filter(exchange);
+    }
+
+    private static boolean isExpired(String deadline) {
+        try {
+            return Long.parseLong(deadline) < System.currentTimeMillis();
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.techelly.idempotency;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/*
+ * Remembers the response of an operation per (orderId, operation), so a retried or redelivered request
+ * is answered with the original response instead of being applied again.
+ * Entries expire after the ttl, and the oldest entries are dropped once maxEntries is reached.
+ * Every entry lives for the same ttl, so insertion order is also expiry order and a plain FIFO queue is enough.
+ * The first request for a key only puts a pending entry into the map, and runs the action outside of it. Concurrent
+ * duplicates wait for that entry to complete. An action which fails leaves nothing behind, so a retry runs it again.
+ * The entries live in memory only. A restart forgets them, unless the owner keeps its responses itself and hands
+ * them back through restore().
+ */
+public class IdempotencyCache<V> {
+
+    private final ConcurrentHashMap<Key, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry<V>> insertionOrder = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    public IdempotencyCache(int maxEntries, Duration ttl) {
+        if(maxEntries < 1)
+            throw new IllegalArgumentException("maxEntries must be positive : " + maxEntries);
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttl.toNanos();
+    }
+
+    // runs the action only if no live response is cached for the key. concurrent duplicates wait for the first one
+    public V execute(final UUID orderId, final String operation, final Supplier<V> action) {
+        if(orderId == null)
+            return action.get();
+        Key key = new Key(orderId, operation);
+        long now = System.nanoTime();
+        Entry<V> cached = this.entries.get(key);
+        if(cached != null && !cached.isExpired(now))
+            return cached.await();
+        Entry<V> created = new Entry<>(key, now + this.ttlNanos);
+        Entry<V> entry = this.entries.compute(key, (k, existing) ->
+                existing != null && !existing.isExpired(now) ? existing : created);
+        if(entry != created)
+            return entry.await();
+        this.insertionOrder.add(created);
+        this.evict(now);
+        V value;
+        try {
+            value = action.get();
+        } catch (RuntimeException | Error e) {
+            this.entries.remove(key, created);
+            created.result.completeExceptionally(e);
+            throw e;
+        }
+        created.result.complete(value);
+        return value;
+    }
+
+    // a response of an earlier run, answered the given time ago. it expires when it would have without the restart
+    public void restore(final UUID orderId, final String operation, final V value, final Duration age) {
+        long now = System.nanoTime();
+        Entry<V> entry = new Entry<>(new Key(orderId, operation), now + this.ttlNanos - age.toNanos());
+        if(entry.isExpired(now))
+            return;
+        entry.result.complete(value);
+        this.entries.put(entry.key, entry);
+        this.insertionOrder.add(entry);
+        this.evict(now);
+    }
+
+    public int size() {
+        return this.entries.size();
+    }
+
+    private void evict(final long now) {
+        if(!this.evictionLock.tryLock())
+            return;
+        try {
+            Entry<V> head;
+            while((head = this.insertionOrder.peek()) != null){
+                if(!head.isExpired(now) && this.entries.size() <= this.maxEntries)
+                    return;
+                this.insertionOrder.poll();
+                // no-op if the entry was already replaced by a newer one
+                this.entries.remove(head.key, head);
+            }
+        } finally {
+            this.evictionLock.unlock();
+        }
+    }
+
+    private static final class Key {
+
+        private final UUID orderId;
+        private final String operation;
+
+        private Key(UUID orderId, String operation) {
+            this.orderId = orderId;
+            this.operation = operation;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o)
+                return true;
+            if(!(o instanceof Key))
+                return false;
+            Key key = (Key) o;
+            return this.orderId.equals(key.orderId) && this.operation.equals(key.operation);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(this.orderId, this.operation);
+        }
+
+    }
+
+    private static final class Entry<V> {
+
+        private final Key key;
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private final Thread owner = Thread.currentThread();
+        private final long expiresAt;
+
+        private Entry(Key key, long expiresAt) {
+            this.key = key;
+            this.expiresAt = expiresAt;
+        }
+
+        // a failure of the first request is rethrown to the duplicates which waited for it
+        private V await() {
+            if(!this.result.isDone() && this.owner == Thread.currentThread())
+                throw new IllegalStateException("the action for " + this.key.orderId + " " + this.key.operation + " executes its own key");
+            try {
+                return this.result.join();
+            } catch (CompletionException e) {
+                if(e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException) e.getCause();
+                if(e.getCause() instanceof Error)
+                    throw (Error) e.getCause();
+                throw e;
+            }
+        }
+
+        private boolean isExpired(long now) {
+            return now - this.expiresAt > 0;
+        }
+
+    }
+
+}
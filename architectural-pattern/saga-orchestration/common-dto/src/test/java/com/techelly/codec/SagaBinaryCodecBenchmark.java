@@ -0,0 +1,118 @@
+package com.techelly.codec;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.techelly.dto.OrchestratorRequestDTO;
+import com.techelly.dto.OrchestratorResponseDTO;
+import com.techelly.enums.OrderStatus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Encode / decode of the two messages crossing the broker, binary codec against the jackson json the binder uses otherwise.
+ * main() adds the gc profiler, so the report has gc.alloc.rate.norm, the bytes allocated per operation.
+ * run main() on the test classpath, or org.openjdk.jmh.Main SagaBinaryCodecBenchmark -prof gc for custom options
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SagaBinaryCodecBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private OrchestratorRequestDTO request;
+    private OrchestratorResponseDTO response;
+    private byte[] requestBinary;
+    private byte[] responseBinary;
+    private byte[] requestJson;
+    private byte[] responseJson;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.request = new OrchestratorRequestDTO();
+        this.request.setOrderId(UUID.randomUUID());
+        this.request.setUserId(1);
+        this.request.setProductId(3);
+        this.request.setAmount(100d);
+        this.response = new OrchestratorResponseDTO();
+        this.response.setOrderId(this.request.getOrderId());
+        this.response.setUserId(1);
+        this.response.setProductId(3);
+        this.response.setAmount(100d);
+        this.response.setStatus(OrderStatus.ORDER_COMPLETED);
+        this.requestBinary = SagaBinaryCodec.encode(this.request);
+        this.responseBinary = SagaBinaryCodec.encode(this.response);
+        this.requestJson = this.mapper.writeValueAsBytes(this.request);
+        this.responseJson = this.mapper.writeValueAsBytes(this.response);
+        System.out.println("request " + this.requestBinary.length + " bytes binary, " + this.requestJson.length + " bytes json");
+        System.out.println("response " + this.responseBinary.length + " bytes binary, " + this.responseJson.length + " bytes json");
+    }
+
+    @Benchmark
+    public byte[] encodeRequestBinary() {
+        return SagaBinaryCodec.encode(this.request);
+    }
+
+    @Benchmark
+    public byte[] encodeRequestJson() throws IOException {
+        return this.mapper.writeValueAsBytes(this.request);
+    }
+
+    @Benchmark
+    public OrchestratorRequestDTO decodeRequestBinary() {
+        return SagaBinaryCodec.decode(this.requestBinary, OrchestratorRequestDTO.class);
+    }
+
+    @Benchmark
+    public OrchestratorRequestDTO decodeRequestJson() throws IOException {
+        return this.mapper.readValue(this.requestJson, OrchestratorRequestDTO.class);
+    }
+
+    @Benchmark
+    public byte[] encodeResponseBinary() {
+        return SagaBinaryCodec.encode(this.response);
+    }
+
+    @Benchmark
+    public byte[] encodeResponseJson() throws IOException {
+        return this.mapper.writeValueAsBytes(this.response);
+    }
+
+    @Benchmark
+    public OrchestratorResponseDTO decodeResponseBinary() {
+        return SagaBinaryCodec.decode(this.responseBinary, OrchestratorResponseDTO.class);
+    }
+
+    @Benchmark
+    public OrchestratorResponseDTO decodeResponseJson() throws IOException {
+        return this.mapper.readValue(this.responseJson, OrchestratorResponseDTO.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SagaBinaryCodecBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.techelly.codec;
+
+import com.techelly.dto.InventoryRequestDTO;
+import com.techelly.dto.InventoryResponseDTO;
+import com.techelly.dto.OrchestratorRequestDTO;
+import com.techelly.dto.OrchestratorResponseDTO;
+import com.techelly.dto.OrderRequestDTO;
+import com.techelly.dto.OrderResponseDTO;
+import com.techelly.dto.PaymentRequestDTO;
+import com.techelly.dto.PaymentResponseDTO;
+import com.techelly.enums.InventoryStatus;
+import com.techelly.enums.OrderStatus;
+import com.techelly.enums.PaymentStatus;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SagaBinaryCodecTests {
+
+    private static <T> void assertRoundTrip(T value) {
+        @SuppressWarnings("unchecked")
+        Class<T> type = (Class<T>) value.getClass();
+        assertEquals(value, SagaBinaryCodec.decode(SagaBinaryCodec.encode(value), type));
+    }
+
+    @Test
+    void roundTripsEveryType() {
+        UUID orderId = UUID.randomUUID();
+
+        OrchestratorRequestDTO orchestratorRequest = new OrchestratorRequestDTO();
+        orchestratorRequest.setUserId(1);
+        orchestratorRequest.setProductId(3);
+        orchestratorRequest.setOrderId(orderId);
+        orchestratorRequest.setAmount(100.25);
+        assertRoundTrip(orchestratorRequest);
+
+        OrchestratorResponseDTO orchestratorResponse = new OrchestratorResponseDTO();
+        orchestratorResponse.setUserId(1);
+        orchestratorResponse.setProductId(3);
+        orchestratorResponse.setOrderId(orderId);
+        orchestratorResponse.setAmount(100.25);
+        orchestratorResponse.setStatus(OrderStatus.ORDER_CANCELLED);
+        assertRoundTrip(orchestratorResponse);
+
+        OrderRequestDTO orderRequest = new OrderRequestDTO();
+        orderRequest.setUserId(1);
+        orderRequest.setProductId(3);
+        orderRequest.setOrderId(orderId);
+        assertRoundTrip(orderRequest);
+
+        OrderResponseDTO orderResponse = new OrderResponseDTO();
+        orderResponse.setOrderId(orderId);
+        orderResponse.setUserId(1);
+        orderResponse.setProductId(3);
+        orderResponse.setAmount(100.25);
+        orderResponse.setStatus(OrderStatus.ORDER_COMPLETED);
+        assertRoundTrip(orderResponse);
+
+        PaymentRequestDTO paymentRequest = new PaymentRequestDTO();
+        paymentRequest.setUserId(1);
+        paymentRequest.setOrderId(orderId);
+        paymentRequest.setAmount(100.25);
+        assertRoundTrip(paymentRequest);
+
+        PaymentResponseDTO paymentResponse = new PaymentResponseDTO();
+        paymentResponse.setUserId(1);
+        paymentResponse.setOrderId(orderId);
+        paymentResponse.setAmount(100.25);
+        paymentResponse.setStatus(PaymentStatus.PAYMENT_REJECTED);
+        assertRoundTrip(paymentResponse);
+
+        InventoryRequestDTO inventoryRequest = new InventoryRequestDTO();
+        inventoryRequest.setUserId(1);
+        inventoryRequest.setProductId(3);
+        inventoryRequest.setOrderId(orderId);
+        assertRoundTrip(inventoryRequest);
+
+        InventoryResponseDTO inventoryResponse = new InventoryResponseDTO();
+        inventoryResponse.setOrderId(orderId);
+        inventoryResponse.setUserId(1);
+        inventoryResponse.setProductId(3);
+        inventoryResponse.setStatus(InventoryStatus.UNAVAILABLE);
+        assertRoundTrip(inventoryResponse);
+    }
+
+    @Test
+    void roundTripsNullsAndExtremes() {
+        assertRoundTrip(new OrchestratorResponseDTO());
+
+        OrchestratorRequestDTO request = new OrchestratorRequestDTO();
+        request.setUserId(Integer.MIN_VALUE);
+        request.setProductId(Integer.MAX_VALUE);
+        request.setOrderId(new UUID(-1L, 0L));
+        request.setAmount(-0.1);
+        assertRoundTrip(request);
+
+        request.setUserId(-1);
+        request.setProductId(0);
+        request.setAmount(null);
+        assertRoundTrip(request);
+    }
+
+    @Test
+    void rejectsMismatchedAndTruncatedMessages() {
+        OrchestratorRequestDTO request = new OrchestratorRequestDTO();
+        request.setUserId(1);
+        request.setOrderId(UUID.randomUUID());
+        byte[] bytes = SagaBinaryCodec.encode(request);
+
+        assertThrows(IllegalArgumentException.class, () -> SagaBinaryCodec.decode(bytes, OrchestratorResponseDTO.class));
+        assertThrows(IllegalArgumentException.class, () -> SagaBinaryCodec.decode(Arrays.copyOf(bytes, bytes.length - 4), OrchestratorRequestDTO.class));
+    }
+
+}
@@ -0,0 +1,86 @@
+package com.techelly.idempotency;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IdempotencyCacheTests {
+
+    @Test
+    void runsConcurrentDuplicatesOnce() throws Exception {
+        IdempotencyCache<Integer> cache = new IdempotencyCache<>(1000, Duration.ofMinutes(10));
+        UUID orderId = UUID.randomUUID();
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<Integer> first = executor.submit(() -> cache.execute(orderId, "debit", () -> {
+                started.countDown();
+                await(release);
+                return runs.incrementAndGet();
+            }));
+            started.await();
+            List<Future<Integer>> duplicates = new ArrayList<>();
+            for(int i = 0; i < 7; i++)
+                duplicates.add(executor.submit(() -> cache.execute(orderId, "debit", runs::incrementAndGet)));
+            // the action holds no lock of the map, so other keys go ahead meanwhile
+            assertEquals(42, cache.execute(UUID.randomUUID(), "debit", () -> 42));
+            release.countDown();
+            assertEquals(1, first.get(5, TimeUnit.SECONDS));
+            for(Future<Integer> duplicate : duplicates)
+                assertEquals(1, duplicate.get(5, TimeUnit.SECONDS));
+            assertEquals(1, runs.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void runsAgainAfterAFailure() {
+        IdempotencyCache<Integer> cache = new IdempotencyCache<>(1000, Duration.ofMinutes(10));
+        UUID orderId = UUID.randomUUID();
+
+        assertThrows(IllegalStateException.class, () -> cache.execute(orderId, "debit", () -> {
+            throw new IllegalStateException("failed");
+        }));
+        assertEquals(2, cache.execute(orderId, "debit", () -> 2));
+        assertEquals(2, cache.execute(orderId, "debit", () -> 3));
+        // the key of another operation of the same order can be executed from inside an action
+        assertEquals(4, cache.execute(orderId, "credit", () -> cache.execute(orderId, "refund", () -> 4)));
+        assertThrows(IllegalStateException.class, () -> cache.execute(orderId, "reserve", () -> cache.execute(orderId, "reserve", () -> 5)));
+    }
+
+    @Test
+    void dropsOldestEntriesAboveMaxEntries() {
+        IdempotencyCache<Integer> cache = new IdempotencyCache<>(2, Duration.ofMinutes(10));
+        UUID first = UUID.randomUUID();
+        cache.execute(first, "debit", () -> 1);
+        cache.execute(UUID.randomUUID(), "debit", () -> 2);
+        cache.execute(UUID.randomUUID(), "debit", () -> 3);
+
+        assertEquals(2, cache.size());
+        assertEquals(4, cache.execute(first, "debit", () -> 4));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
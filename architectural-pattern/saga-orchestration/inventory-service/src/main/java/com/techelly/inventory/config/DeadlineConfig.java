@@ -0,0 +1,17 @@
+package com.techelly.inventory.config;
+
+import com.techelly.deadline.DeadlineWebFilter;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.server.WebFilter;
+
+@Configuration
+public class DeadlineConfig {
+
+    @Bean
+    public WebFilter deadlineFilter(){
+        return new DeadlineWebFilter();
+    }
+
+}
@@ -10,6 +10,9 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
 @RestController
 @RequestMapping("inventory")
 public class InventoryController {
@@ -22,6 +25,13 @@ public class InventoryController {
         return this.service.deductInventory(requestDTO);
     }
 
+    @PostMapping("/deduct/batch")
+    public List<InventoryResponseDTO> deductBatch(@RequestBody final List<InventoryRequestDTO> requestDTOs){
+        return requestDTOs.stream()
+                .map(this.service::deductInventory)
+                .collect(Collectors.toList());
+    }
+
     @PostMapping("/add")
     public void add(@RequestBody final InventoryRequestDTO requestDTO){
         this.service.addInventory(requestDTO);
@@ -3,43 +3,77 @@ package com.techelly.inventory.service;
 import com.techelly.dto.InventoryRequestDTO;
 import com.techelly.dto.InventoryResponseDTO;
 import com.techelly.enums.InventoryStatus;
+import com.techelly.idempotency.IdempotencyCache;
+import com.techelly.inventory.store.StockTable;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
-import java.util.HashMap;
-import java.util.Map;
+import java.time.Duration;
 
 @Service
 public class InventoryService {
 
-    private Map<Integer, Integer> productInventoryMap;
+    @Value("${inventory.store.expected-products:1024}")
+    private int expectedProducts;
+
+    @Value("${inventory.store.off-heap:false}")
+    private boolean offHeap;
+
+    @Value("${idempotency.max-entries:100000}")
+    private int idempotencyMaxEntries;
+
+    @Value("${idempotency.ttl:10m}")
+    private Duration idempotencyTtl;
+
+    private StockTable productInventory;
+    private IdempotencyCache<InventoryResponseDTO> idempotencyCache;
 
     @PostConstruct
     private void init(){
-        this.productInventoryMap = new HashMap<>();
-        this.productInventoryMap.put(1, 5);
-        this.productInventoryMap.put(2, 5);
-        this.productInventoryMap.put(3, 5);
+        this.idempotencyCache = new IdempotencyCache<>(this.idempotencyMaxEntries, this.idempotencyTtl);
+        this.productInventory = this.offHeap ? StockTable.offHeap(this.expectedProducts) : StockTable.onHeap(this.expectedProducts);
+        this.productInventory.set(1, 5);
+        this.productInventory.set(2, 5);
+        this.productInventory.set(3, 5);
     }
 
     public InventoryResponseDTO deductInventory(final InventoryRequestDTO requestDTO){
-        int quantity = this.productInventoryMap.getOrDefault(requestDTO.getProductId(), 0);
+        return this.idempotencyCache.execute(requestDTO.getOrderId(), "deduct", () -> this.applyDeduct(requestDTO));
+    }
+
+    // a deduct we have not seen yet is fenced as unavailable, so a late deduct of an abandoned saga is never applied
+    public void addInventory(final InventoryRequestDTO requestDTO){
+        InventoryResponseDTO deduct = requestDTO.getOrderId() == null ? null
+                : this.idempotencyCache.execute(requestDTO.getOrderId(), "deduct", () -> this.unavailable(requestDTO));
+        this.idempotencyCache.execute(requestDTO.getOrderId(), "add", () -> {
+            if(deduct == null || deduct.getStatus() == InventoryStatus.AVAILABLE)
+                this.applyAdd(requestDTO);
+            return null;
+        });
+    }
+
+    private InventoryResponseDTO applyDeduct(final InventoryRequestDTO requestDTO){
+        InventoryResponseDTO responseDTO = this.unavailable(requestDTO);
+        if(requestDTO.getProductId() != null && this.productInventory.tryDecrement(requestDTO.getProductId())){
+            responseDTO.setStatus(InventoryStatus.AVAILABLE);
+        }
+        return responseDTO;
+    }
+
+    private InventoryResponseDTO unavailable(final InventoryRequestDTO requestDTO){
         InventoryResponseDTO responseDTO = new InventoryResponseDTO();
         responseDTO.setOrderId(requestDTO.getOrderId());
         responseDTO.setUserId(requestDTO.getUserId());
         responseDTO.setProductId(requestDTO.getProductId());
         responseDTO.setStatus(InventoryStatus.UNAVAILABLE);
-        if(quantity > 0){
-            responseDTO.setStatus(InventoryStatus.AVAILABLE);
-            this.productInventoryMap.put(requestDTO.getProductId(), quantity - 1);
-        }
         return responseDTO;
     }
 
-    public void addInventory(final InventoryRequestDTO requestDTO){
-        this.productInventoryMap
-                .computeIfPresent(requestDTO.getProductId(), (k, v) -> v + 1);
+    private void applyAdd(final InventoryRequestDTO requestDTO){
+        if(requestDTO.getProductId() != null)
+            this.productInventory.increment(requestDTO.getProductId());
     }
 
 }
@@ -0,0 +1,176 @@
+package com.techelly.inventory.store;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/*
+ * Fixed capacity, int keyed open addressing table of stock counters.
+ * Each slot is a (key, count) pair of ints laid out next to each other, either in an int[]
+ * or in a direct buffer when the table is kept off-heap. Keys are claimed and counts are
+ * changed with CAS only, so no operation ever takes a lock and a count never drops below zero.
+ * Slots are never removed, which keeps linear probing safe without tombstones.
+ */
+public final class StockTable {
+
+    private static final int EMPTY = Integer.MIN_VALUE;
+    private static final VarHandle ARRAY = MethodHandles.arrayElementVarHandle(int[].class);
+    private static final VarHandle BUFFER = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    private static final int MAX_PRODUCTS = 1 << 25;
+
+    private final int mask;
+    private final int[] array;
+    private final ByteBuffer buffer;
+
+    private StockTable(int expectedProducts, boolean offHeap) {
+        if(expectedProducts < 1 || expectedProducts > MAX_PRODUCTS)
+            throw new IllegalArgumentException("unsupported number of products : " + expectedProducts);
+        // next power of two above twice the expected products, so the load factor stays at most 0.5
+        int slots = Integer.highestOneBit(expectedProducts * 4 - 1);
+        this.mask = slots - 1;
+        if(offHeap){
+            this.array = null;
+            this.buffer = ByteBuffer.allocateDirect(slots * 8 + 8).alignedSlice(8).order(ByteOrder.nativeOrder());
+        } else {
+            this.array = new int[slots * 2];
+            this.buffer = null;
+        }
+        for(int slot = 0; slot < slots; slot++)
+            this.setKey(slot, EMPTY);
+        VarHandle.releaseFence();
+    }
+
+    public static StockTable onHeap(int expectedProducts) {
+        return new StockTable(expectedProducts, false);
+    }
+
+    public static StockTable offHeap(int expectedProducts) {
+        return new StockTable(expectedProducts, true);
+    }
+
+    public int get(final int productId) {
+        int slot = this.find(productId);
+        return slot < 0 ? 0 : this.getCount(slot);
+    }
+
+    public void set(final int productId, final int quantity) {
+        if(quantity < 0)
+            throw new IllegalArgumentException("quantity must not be negative : " + quantity);
+        this.setCount(this.claim(productId), quantity);
+    }
+
+    // takes one unit of stock. false if the product is unknown or sold out
+    public boolean tryDecrement(final int productId) {
+        int slot = this.find(productId);
+        if(slot < 0)
+            return false;
+        int count;
+        do {
+            count = this.getCount(slot);
+            if(count <= 0)
+                return false;
+        } while(!this.casCount(slot, count, count - 1));
+        return true;
+    }
+
+    // returns one unit of stock. false if the product is unknown, throws rather than lose the unit when the count is full
+    public boolean increment(final int productId) {
+        int slot = this.find(productId);
+        if(slot < 0)
+            return false;
+        int count;
+        do {
+            count = this.getCount(slot);
+            if(count == Integer.MAX_VALUE)
+                throw new IllegalStateException("stock of product " + productId + " is at its maximum : " + count);
+        } while(!this.casCount(slot, count, count + 1));
+        return true;
+    }
+
+    public int capacity() {
+        return this.mask + 1;
+    }
+
+    private int find(final int productId) {
+        checkKey(productId);
+        int slot = hash(productId) & this.mask;
+        for(int probes = 0; probes <= this.mask; probes++){
+            int key = this.getKey(slot);
+            if(key == productId)
+                return slot;
+            if(key == EMPTY)
+                return -1;
+            slot = (slot + 1) & this.mask;
+        }
+        return -1;
+    }
+
+    private int claim(final int productId) {
+        checkKey(productId);
+        int slot = hash(productId) & this.mask;
+        for(int probes = 0; probes <= this.mask; probes++){
+            int key = this.getKey(slot);
+            if(key == productId)
+                return slot;
+            if(key == EMPTY && (this.casKey(slot, productId) || this.getKey(slot) == productId))
+                return slot;
+            slot = (slot + 1) & this.mask;
+        }
+        throw new IllegalStateException("stock table is full, capacity : " + this.capacity());
+    }
+
+    private static void checkKey(final int productId) {
+        if(productId == EMPTY)
+            throw new IllegalArgumentException("unsupported product id : " + productId);
+    }
+
+    // murmur3 finalizer, spreads sequential ids over the table
+    private static int hash(int key) {
+        key ^= key >>> 16;
+        key *= 0x85ebca6b;
+        key ^= key >>> 13;
+        key *= 0xc2b2ae35;
+        key ^= key >>> 16;
+        return key;
+    }
+
+    private int getKey(final int slot) {
+        return this.array != null
+                ? (int) ARRAY.getVolatile(this.array, slot << 1)
+                : (int) BUFFER.getVolatile(this.buffer, slot << 3);
+    }
+
+    private void setKey(final int slot, final int key) {
+        if(this.array != null)
+            ARRAY.set(this.array, slot << 1, key);
+        else
+            BUFFER.set(this.buffer, slot << 3, key);
+    }
+
+    private boolean casKey(final int slot, final int key) {
+        return this.array != null
+                ? ARRAY.compareAndSet(this.array, slot << 1, EMPTY, key)
+                : BUFFER.compareAndSet(this.buffer, slot << 3, EMPTY, key);
+    }
+
+    private int getCount(final int slot) {
+        return this.array != null
+                ? (int) ARRAY.getVolatile(this.array, (slot << 1) + 1)
+                : (int) BUFFER.getVolatile(this.buffer, (slot << 3) + 4);
+    }
+
+    private void setCount(final int slot, final int count) {
+        if(this.array != null)
+            ARRAY.setVolatile(this.array, (slot << 1) + 1, count);
+        else
+            BUFFER.setVolatile(this.buffer, (slot << 3) + 4, count);
+    }
+
+    private boolean casCount(final int slot, final int expected, final int count) {
+        return this.array != null
+                ? ARRAY.compareAndSet(this.array, (slot << 1) + 1, expected, count)
+                : BUFFER.compareAndSet(this.buffer, (slot << 3) + 4, expected, count);
+    }
+
+}
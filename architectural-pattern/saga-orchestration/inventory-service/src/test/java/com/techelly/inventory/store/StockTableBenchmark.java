@@ -0,0 +1,102 @@
+package com.techelly.inventory.store;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Deduct / add pairs against a handful of hot products, so most threads hit the same few counters.
+ * run main() on the test classpath, or org.openjdk.jmh.Main StockTableBenchmark for custom options
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+public class StockTableBenchmark {
+
+    private static final int PRODUCTS = 1_000_000;
+
+    @Param({"4", "1024"})
+    private int hotProducts;
+
+    private StockTable onHeap;
+    private StockTable offHeap;
+    private ConcurrentHashMap<Integer, Integer> map;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.onHeap = StockTable.onHeap(PRODUCTS);
+        this.offHeap = StockTable.offHeap(PRODUCTS);
+        this.map = new ConcurrentHashMap<>(PRODUCTS * 2);
+        for(int productId = 0; productId < PRODUCTS; productId++){
+            this.onHeap.set(productId, 1_000);
+            this.offHeap.set(productId, 1_000);
+            this.map.put(productId, 1_000);
+        }
+    }
+
+    @Benchmark
+    public boolean stockTableOnHeap() {
+        int productId = this.nextProduct();
+        boolean deducted = this.onHeap.tryDecrement(productId);
+        if(deducted)
+            this.onHeap.increment(productId);
+        return deducted;
+    }
+
+    @Benchmark
+    public boolean stockTableOffHeap() {
+        int productId = this.nextProduct();
+        boolean deducted = this.offHeap.tryDecrement(productId);
+        if(deducted)
+            this.offHeap.increment(productId);
+        return deducted;
+    }
+
+    @Benchmark
+    public boolean concurrentHashMapCompute() {
+        int productId = this.nextProduct();
+        boolean[] deducted = new boolean[1];
+        this.map.compute(productId, (k, v) -> {
+            if(v == null || v <= 0)
+                return v;
+            deducted[0] = true;
+            return v - 1;
+        });
+        if(deducted[0])
+            this.map.compute(productId, (k, v) -> v + 1);
+        return deducted[0];
+    }
+
+    private int nextProduct() {
+        return ThreadLocalRandom.current().nextInt(this.hotProducts);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(StockTableBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+
+}
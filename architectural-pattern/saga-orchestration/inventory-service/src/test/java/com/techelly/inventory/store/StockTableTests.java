@@ -0,0 +1,147 @@
+package com.techelly.inventory.store;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StockTableTests {
+
+    private static final int THREADS = 8;
+
+    private static StockTable table(boolean offHeap, int expectedProducts) {
+        return offHeap ? StockTable.offHeap(expectedProducts) : StockTable.onHeap(expectedProducts);
+    }
+
+    private static int[] runAll(Callable<Integer> task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> futures = new ArrayList<>();
+            for(int i = 0; i < THREADS; i++)
+                futures.add(executor.submit(task));
+            int[] results = new int[THREADS];
+            for(int i = 0; i < THREADS; i++)
+                results[i] = futures.get(i).get(30, TimeUnit.SECONDS);
+            return results;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void neverSellsMoreThanTheStockOfAKey(boolean offHeap) throws Exception {
+        StockTable table = table(offHeap, 16);
+        table.set(7, 10_000);
+
+        int[] sold = runAll(() -> {
+            int taken = 0;
+            while(table.tryDecrement(7))
+                taken++;
+            return taken;
+        });
+
+        int total = 0;
+        for(int taken : sold)
+            total += taken;
+        assertEquals(10_000, total);
+        assertEquals(0, table.get(7));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void keepsConcurrentDeductsAndAddsOfAKey(boolean offHeap) throws Exception {
+        StockTable table = table(offHeap, 16);
+        table.set(7, 100);
+
+        // every unit taken is given back, so the count ends where it started
+        runAll(() -> {
+            for(int i = 0; i < 100_000; i++){
+                if(table.tryDecrement(7))
+                    assertTrue(table.increment(7));
+            }
+            return 0;
+        });
+
+        assertEquals(100, table.get(7));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void keepsCollidingKeysApart(boolean offHeap) throws Exception {
+        // a small table full of keys, so most of them probe past each other
+        StockTable table = table(offHeap, 4);
+        int keys = table.capacity();
+
+        runAll(() -> {
+            for(int key = 0; key < keys; key++)
+                table.set(key * 31, 1_000);
+            return 0;
+        });
+        int[] rounds = runAll(() -> {
+            int taken = 0;
+            for(int round = 0; round < 500; round++){
+                for(int key = 0; key < keys; key++){
+                    if(table.tryDecrement(key * 31))
+                        taken++;
+                    if(round % 2 == 0 && table.tryDecrement(key * 31))
+                        assertTrue(table.increment(key * 31));
+                }
+            }
+            return taken;
+        });
+
+        int total = 0;
+        for(int taken : rounds)
+            total += taken;
+        int left = 0;
+        for(int key = 0; key < keys; key++){
+            assertTrue(table.get(key * 31) >= 0);
+            left += table.get(key * 31);
+        }
+        assertEquals(keys * 1_000, total + left);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void rejectsNewKeysOnceFull(boolean offHeap) {
+        StockTable table = table(offHeap, 4);
+        for(int key = 0; key < table.capacity(); key++)
+            table.set(key, key);
+
+        assertThrows(IllegalStateException.class, () -> table.set(table.capacity(), 1));
+        assertEquals(0, table.get(table.capacity()));
+        assertFalse(table.tryDecrement(table.capacity()));
+        assertFalse(table.increment(table.capacity()));
+        for(int key = 0; key < table.capacity(); key++)
+            assertEquals(key, table.get(key));
+        // a known key is still updated in place
+        table.set(3, 42);
+        assertEquals(42, table.get(3));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void refusesToIncrementPastTheMaximum(boolean offHeap) {
+        StockTable table = table(offHeap, 4);
+        table.set(1, Integer.MAX_VALUE - 1);
+
+        assertTrue(table.increment(1));
+        assertThrows(IllegalStateException.class, () -> table.increment(1));
+        assertEquals(Integer.MAX_VALUE, table.get(1));
+        assertTrue(table.tryDecrement(1));
+        assertEquals(Integer.MAX_VALUE - 1, table.get(1));
+    }
+
+}
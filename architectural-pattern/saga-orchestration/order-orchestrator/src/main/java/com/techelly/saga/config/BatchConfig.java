@@ -0,0 +1,64 @@
+package com.techelly.saga.config;
+
+import com.techelly.deadline.DeadlineWebFilter;
+import com.techelly.dto.InventoryRequestDTO;
+import com.techelly.dto.InventoryResponseDTO;
+import com.techelly.dto.PaymentRequestDTO;
+import com.techelly.dto.PaymentResponseDTO;
+import com.techelly.saga.service.batch.RequestBatcher;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.List;
+
+@Configuration
+public class BatchConfig {
+
+    @Value("${service.batch.max-size:64}")
+    private int maxSize;
+
+    @Value("${service.batch.max-wait:2ms}")
+    private Duration maxWait;
+
+    @Value("${service.batch.max-in-flight:32}")
+    private int maxInFlight;
+
+    @Bean
+    public RequestBatcher<PaymentRequestDTO, PaymentResponseDTO> paymentBatcher(@Qualifier("payment") WebClient paymentClient){
+        return new RequestBatcher<>(
+                (requests, deadline) -> paymentClient
+                        .post()
+                        .uri("/payment/debit/batch")
+                        .header(DeadlineWebFilter.HEADER, String.valueOf(deadline))
+                        .bodyValue(requests)
+                        .retrieve()
+                        .bodyToMono(new ParameterizedTypeReference<List<PaymentResponseDTO>>() {}),
+                this.maxSize,
+                this.maxWait,
+                this.maxInFlight
+        );
+    }
+
+    @Bean
+    public RequestBatcher<InventoryRequestDTO, InventoryResponseDTO> inventoryBatcher(@Qualifier("inventory") WebClient inventoryClient){
+        return new RequestBatcher<>(
+                (requests, deadline) -> inventoryClient
+                        .post()
+                        .uri("/inventory/deduct/batch")
+                        .header(DeadlineWebFilter.HEADER, String.valueOf(deadline))
+                        .bodyValue(requests)
+                        .retrieve()
+                        .bodyToMono(new ParameterizedTypeReference<List<InventoryResponseDTO>>() {}),
+                this.maxSize,
+                this.maxWait,
+                this.maxInFlight
+        );
+    }
+
+}
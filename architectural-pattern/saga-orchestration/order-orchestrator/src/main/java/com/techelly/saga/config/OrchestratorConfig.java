@@ -1,13 +1,17 @@
 package com.techelly.saga.config;
 
+import com.techelly.codec.SagaBinaryMessageConverter;
 import com.techelly.saga.service.OrchestratorService;
 import com.techelly.dto.OrchestratorRequestDTO;
 import com.techelly.dto.OrchestratorResponseDTO;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.converter.MessageConverter;
 import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
 
 import java.util.function.Function;
 
@@ -17,11 +21,36 @@ public class OrchestratorConfig {
     @Autowired
     private OrchestratorService orchestratorService;
 
+    @Value("${saga.lanes.count:64}")
+    private int lanes;
+
+    @Value("${saga.lanes.queue-capacity:256}")
+    private int queueCapacity;
+
+    /*
+     * Orders are hashed by orderId into lanes. A lane runs one saga at a time, so two messages for the same order
+     * never race, while the lanes run side by side on the parallel scheduler.
+     * Every lane has a bounded queue. Once it is full, the lane stops requesting and the backpressure reaches the binder.
+     * The number of lanes is also the number of sagas in flight.
+     */
     @Bean
     public Function<Flux<OrchestratorRequestDTO>, Flux<OrchestratorResponseDTO>> processor(){
         return flux -> flux
-                            .flatMap(dto -> this.orchestratorService.orderProduct(dto))
+                            .groupBy(this::lane, this.queueCapacity)
+                            .flatMap(lane -> lane
+                                    .publishOn(Schedulers.parallel(), this.queueCapacity)
+                                    .concatMap(dto -> this.orchestratorService.orderProduct(dto), 1), this.lanes)
                             .doOnNext(dto -> System.out.println("Status : " + dto.getStatus()));
     }
 
+    // used by the bindings whose content-type is application/x-saga-binary
+    @Bean
+    public MessageConverter sagaBinaryMessageConverter(){
+        return new SagaBinaryMessageConverter();
+    }
+
+    private int lane(final OrchestratorRequestDTO requestDTO){
+        return requestDTO.getOrderId() == null ? 0 : Math.floorMod(requestDTO.getOrderId().hashCode(), this.lanes);
+    }
+
 }
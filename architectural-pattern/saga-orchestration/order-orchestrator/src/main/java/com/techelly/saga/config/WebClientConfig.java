@@ -1,27 +1,84 @@
 package com.techelly.saga.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
 
 @Configuration
 public class WebClientConfig {
 
+    private static final String ACQUIRE_START = WebClientConfig.class.getName() + ".acquireStart";
+
+    @Value("${service.pool.max-connections:64}")
+    private int maxConnections;
+
+    @Value("${service.pool.pending-acquire-timeout:500ms}")
+    private Duration pendingAcquireTimeout;
+
+    @Value("${service.pool.max-pending-acquires:1024}")
+    private int maxPendingAcquires;
+
+    @Value("${service.pool.max-idle-time:30s}")
+    private Duration maxIdleTime;
+
+    @Value("${service.pool.evict-interval:10s}")
+    private Duration evictInterval;
+
+    @Value("${service.pool.h2c:false}")
+    private boolean h2c;
+
     @Bean
     @Qualifier("payment")
-    public WebClient paymentClient(@Value("${service.endpoints.payment}") String endpoint){
-        return WebClient.builder()
-                .baseUrl(endpoint)
-                .build();
+    public WebClient paymentClient(@Value("${service.endpoints.payment}") String endpoint, MeterRegistry registry){
+        return this.webClient("payment", endpoint, registry);
     }
 
     @Bean
     @Qualifier("inventory")
-    public WebClient inventoryClient(@Value("${service.endpoints.inventory}") String endpoint){
+    public WebClient inventoryClient(@Value("${service.endpoints.inventory}") String endpoint, MeterRegistry registry){
+        return this.webClient("inventory", endpoint, registry);
+    }
+
+    /*
+     * Every client gets a pool of its own, so a slow service can not take the connections of the other one.
+     * The pool exports its active, idle and pending counts as reactor.netty.connection.provider.* gauges.
+     * service.client.acquire measures how long a request waited for its connection, including connecting a new one.
+     * With h2c the requests are multiplexed over the pooled connections instead of taking one each.
+     */
+    private WebClient webClient(final String name, final String endpoint, final MeterRegistry registry){
+        ConnectionProvider provider = ConnectionProvider.builder(name)
+                .maxConnections(this.maxConnections)
+                .pendingAcquireTimeout(this.pendingAcquireTimeout)
+                .pendingAcquireMaxCount(this.maxPendingAcquires)
+                .maxIdleTime(this.maxIdleTime)
+                .evictInBackground(this.evictInterval)
+                .metrics(true)
+                .build();
+        Timer acquire = Timer.builder("service.client.acquire")
+                .tag("client", name)
+                .publishPercentileHistogram()
+                .register(registry);
+        HttpClient httpClient = HttpClient.create(provider)
+                .protocol(this.h2c ? HttpProtocol.H2C : HttpProtocol.HTTP11)
+                .doOnRequest((request, connection) -> request.currentContextView()
+                        .<Long>getOrEmpty(ACQUIRE_START)
+                        .ifPresent(start -> acquire.record(System.nanoTime() - start, TimeUnit.NANOSECONDS)));
         return WebClient.builder()
                 .baseUrl(endpoint)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter((request, next) -> next.exchange(request)
+                        .contextWrite(ctx -> ctx.put(ACQUIRE_START, System.nanoTime())))
                 .build();
     }
 
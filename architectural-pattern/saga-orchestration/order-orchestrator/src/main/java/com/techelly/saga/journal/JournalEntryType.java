@@ -0,0 +1,27 @@
+package com.techelly.saga.journal;
+
+public enum JournalEntryType {
+
+    SAGA_STARTED,
+    STEP_COMPLETED,
+    STEP_FAILED,
+    STEP_REVERTED,
+    SAGA_COMPENSATING,
+    SAGA_COMPLETED,
+    SAGA_CANCELLED,
+    // appended last, the codes of the entries above are on disk already
+    STEP_STARTED,
+    STEP_UNKNOWN;
+
+    private static final JournalEntryType[] VALUES = values();
+
+    // 0 marks the unwritten tail of a segment
+    int code() {
+        return this.ordinal() + 1;
+    }
+
+    static JournalEntryType fromCode(int code) {
+        return code < 1 || code > VALUES.length ? null : VALUES[code - 1];
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.techelly.saga.journal;
+
+import com.techelly.saga.service.WorkflowStep;
+import com.techelly.saga.service.WorkflowStepStatus;
+
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+
+/*
+ * records the start and the outcome of a step in the saga journal. a step recovered as complete is not run again,
+ * one recovered as unknown is only ever reverted.
+ * a step which errors or is cancelled, e.g. when the saga runs out of time, may still be applied downstream, so it is
+ * journaled as unknown. one that was started but has no outcome in the journal counts as unknown as well.
+ * a step reverted once is REVERTED from then on, so retrying the compensation of the saga does not revert it twice
+ */
+public class JournaledStep implements WorkflowStep {
+
+    private final WorkflowStep delegate;
+    private final SagaJournal journal;
+    private final UUID orderId;
+    private final int index;
+    // COMPLETE or UNKNOWN for a step of a recovered saga, null otherwise
+    private final WorkflowStepStatus recovered;
+    private volatile boolean reverted;
+
+    public JournaledStep(WorkflowStep delegate, SagaJournal journal, UUID orderId, int index, WorkflowStepStatus recovered) {
+        this.delegate = delegate;
+        this.journal = journal;
+        this.orderId = orderId;
+        this.index = index;
+        this.recovered = recovered;
+    }
+
+    @Override
+    public String getName() {
+        return this.delegate.getName();
+    }
+
+    @Override
+    public WorkflowStepStatus getStatus() {
+        if(this.reverted)
+            return WorkflowStepStatus.REVERTED;
+        return this.recovered != null ? this.recovered : this.delegate.getStatus();
+    }
+
+    @Override
+    public Mono<Boolean> process() {
+        if(this.recovered == WorkflowStepStatus.COMPLETE)
+            return Mono.just(true);
+        if(this.recovered == WorkflowStepStatus.UNKNOWN)
+            return Mono.just(false);
+        return Mono.defer(() -> {
+            this.journal.record(this.orderId, JournalEntryType.STEP_STARTED, this.index);
+            return this.delegate.process()
+                    .doOnNext(b -> this.journal.record(this.orderId, b ? JournalEntryType.STEP_COMPLETED : JournalEntryType.STEP_FAILED, this.index))
+                    .doOnError(ex -> this.journal.record(this.orderId, JournalEntryType.STEP_UNKNOWN, this.index))
+                    .doOnCancel(() -> this.journal.record(this.orderId, JournalEntryType.STEP_UNKNOWN, this.index));
+        });
+    }
+
+    @Override
+    public Mono<Boolean> revert() {
+        return this.delegate.revert()
+                .doOnNext(b -> {
+                    if(b){
+                        this.reverted = true;
+                        this.journal.record(this.orderId, JournalEntryType.STEP_REVERTED, this.index);
+                    }
+                });
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.techelly.saga.journal;
+
+import com.techelly.dto.OrchestratorRequestDTO;
+
+import lombok.Data;
+
+import java.util.BitSet;
+
+@Data
+public class RecoveredSaga {
+
+    private final OrchestratorRequestDTO request;
+    // indexes of the workflow steps which completed and were not reverted yet
+    private final BitSet completedSteps = new BitSet();
+    // indexes of the workflow steps which were started but whose outcome is not known, they are reverted to be safe
+    private final BitSet unknownSteps = new BitSet();
+    private boolean compensating;
+
+    public boolean needsCompensation() {
+        return this.compensating || !this.unknownSteps.isEmpty();
+    }
+
+}
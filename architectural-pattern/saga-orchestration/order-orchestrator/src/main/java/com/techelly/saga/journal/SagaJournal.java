@@ -0,0 +1,453 @@
+package com.techelly.saga.journal;
+
+import com.techelly.dto.OrchestratorRequestDTO;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/*
+ * Append only journal of saga transitions, stored in memory mapped segment files.
+ *
+ * Callers copy each entry into a preallocated ring of longs, so appending takes no lock and allocates nothing.
+ * A single writer thread drains the ring into the current segment and forces it to disk once per drained batch
+ * (group commit). When the ring is empty it parks until the next append wakes it up. On startup the unfinished sagas of the previous run are read back, rewritten into a fresh
+ * segment and handed out through getRecoveredSagas(), after which the old segments are deleted.
+ * While running, the writer keeps the segment each running saga started in. When it rolls to a new segment, the
+ * segments before the oldest of those are deleted, every saga started in them has finished.
+ */
+@Component
+public class SagaJournal {
+
+    private static final Logger log = LoggerFactory.getLogger(SagaJournal.class);
+
+    // msb, lsb, amount, timestamp, userId, productId, step, type, padding
+    private static final int RECORD_SIZE = 64;
+    private static final int RING_FIELDS = 6;
+    private static final int MIN_SEGMENT_SIZE = RECORD_SIZE * 1024;
+    private static final int NO_VALUE = Integer.MIN_VALUE;
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final VarHandle AVAILABLE = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method invokeCleaner = null;
+        try {
+            Class<?> type = Class.forName("sun.misc.Unsafe");
+            Field field = type.getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            unsafe = field.get(null);
+            invokeCleaner = type.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("cannot unmap journal segments, they are released by the garbage collector", e);
+        }
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = invokeCleaner;
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean syncOnStart;
+    private final int mask;
+    private final long[] ring;
+    private final long[] available;
+    private final AtomicLong claimSequence = new AtomicLong();
+    private final Sinks.Many<Long> durableUpdates = Sinks.many().multicast().directBestEffort();
+    private final List<RecoveredSaga> recoveredSagas = new ArrayList<>();
+    // owned by the writer: the segment each running saga started in, and the number of them per segment
+    private final Map<UUID, Long> runningSagas = new HashMap<>();
+    private final NavigableMap<Long, Integer> runningPerSegment = new TreeMap<>();
+
+    private volatile long consumedSequence = -1;
+    private volatile long durableSequence = -1;
+    private volatile boolean running;
+    private volatile boolean writerParked;
+
+    private Thread writer;
+    private long segmentNumber;
+    private long oldestSegment;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+
+    public SagaJournal(@Value("${saga.journal.directory:saga-journal}") String directory,
+                       @Value("${saga.journal.segment-size:64MB}") DataSize segmentSize,
+                       @Value("${saga.journal.ring-size:65536}") int ringSize,
+                       @Value("${saga.journal.sync-on-start:true}") boolean syncOnStart) {
+        if(Integer.bitCount(ringSize) != 1)
+            throw new IllegalArgumentException("saga.journal.ring-size must be a power of two : " + ringSize);
+        this.directory = Paths.get(directory);
+        this.segmentSize = (int) Math.min(Integer.MAX_VALUE - RECORD_SIZE, Math.max(MIN_SEGMENT_SIZE, segmentSize.toBytes())) / RECORD_SIZE * RECORD_SIZE;
+        this.syncOnStart = syncOnStart;
+        this.mask = ringSize - 1;
+        this.ring = new long[ringSize * RING_FIELDS];
+        this.available = new long[ringSize];
+        Arrays.fill(this.available, -1);
+    }
+
+    @PostConstruct
+    private void init() throws IOException {
+        Files.createDirectories(this.directory);
+        List<Path> segments = this.listSegments();
+        Map<UUID, RecoveredSaga> sagas = new LinkedHashMap<>();
+        for(Path path : segments)
+            this.readSegment(path, sagas);
+        this.segmentNumber = segments.isEmpty() ? 0 : this.segmentNumber(segments.get(segments.size() - 1)) + 1;
+        this.oldestSegment = this.segmentNumber;
+        this.openSegment();
+        int position = 0;
+        for(RecoveredSaga saga : sagas.values()){
+            position = this.rewrite(saga, position);
+            UUID orderId = saga.getRequest().getOrderId();
+            this.track(orderId.getMostSignificantBits(), orderId.getLeastSignificantBits(), JournalEntryType.SAGA_STARTED.code());
+            this.recoveredSagas.add(saga);
+        }
+        this.segment.force();
+        for(Path path : segments)
+            Files.delete(path);
+        if(!this.recoveredSagas.isEmpty())
+            log.info("recovered {} unfinished sagas from {}", this.recoveredSagas.size(), this.directory);
+        this.running = true;
+        final int start = position;
+        this.writer = new Thread(() -> this.writeLoop(start), "saga-journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @PreDestroy
+    private void close() throws InterruptedException, IOException {
+        this.running = false;
+        LockSupport.unpark(this.writer);
+        this.writer.join();
+        this.channel.close();
+        unmap(this.segment);
+    }
+
+    // unfinished sagas of the previous run. returned only once
+    public synchronized List<RecoveredSaga> getRecoveredSagas() {
+        List<RecoveredSaga> sagas = new ArrayList<>(this.recoveredSagas);
+        this.recoveredSagas.clear();
+        return sagas;
+    }
+
+    // completes once the start of the saga is on disk, so it can be recovered if we crash while it runs
+    public Mono<Void> sagaStarted(final OrchestratorRequestDTO requestDTO) {
+        UUID orderId = requestDTO.getOrderId();
+        long sequence = this.append(
+                JournalEntryType.SAGA_STARTED,
+                orderId.getMostSignificantBits(),
+                orderId.getLeastSignificantBits(),
+                NO_VALUE,
+                toInt(requestDTO.getUserId()),
+                toInt(requestDTO.getProductId()),
+                requestDTO.getAmount() == null ? Double.NaN : requestDTO.getAmount()
+        );
+        return this.syncOnStart ? this.awaitDurable(sequence) : Mono.empty();
+    }
+
+    public void record(final UUID orderId, final JournalEntryType type) {
+        this.record(orderId, type, NO_VALUE);
+    }
+
+    public void record(final UUID orderId, final JournalEntryType type, final int step) {
+        this.append(type, orderId.getMostSignificantBits(), orderId.getLeastSignificantBits(), step, NO_VALUE, NO_VALUE, Double.NaN);
+    }
+
+    /*
+     * subscribe to the updates before reading the current value, so an update in between is not missed.
+     * the saga goes on on the parallel scheduler. on the writer thread a saga which appends and waits again would wait
+     * for a drain only that very thread can do
+     */
+    private Mono<Void> awaitDurable(final long sequence) {
+        return Flux.merge(this.durableUpdates.asFlux(), Mono.fromCallable(() -> this.durableSequence))
+                .filter(durable -> durable >= sequence)
+                .next()
+                .publishOn(Schedulers.parallel())
+                .then();
+    }
+
+    private long append(JournalEntryType type, long msb, long lsb, int step, int userId, int productId, double amount) {
+        long sequence = this.claimSequence.getAndIncrement();
+        while(sequence - this.available.length > this.consumedSequence){
+            if(!this.running)
+                throw new IllegalStateException("saga journal is closed");
+            LockSupport.parkNanos(1_000);
+        }
+        int slot = (int) (sequence & this.mask);
+        int base = slot * RING_FIELDS;
+        this.ring[base] = msb;
+        this.ring[base + 1] = lsb;
+        this.ring[base + 2] = Double.doubleToRawLongBits(amount);
+        this.ring[base + 3] = System.currentTimeMillis();
+        this.ring[base + 4] = ((long) userId << 32) | (productId & 0xFFFFFFFFL);
+        this.ring[base + 5] = ((long) step << 32) | type.code();
+        // volatile, so that either the writer sees this entry before it parks, or this thread sees it parked
+        AVAILABLE.setVolatile(this.available, slot, sequence);
+        if(this.writerParked)
+            LockSupport.unpark(this.writer);
+        return sequence;
+    }
+
+    private void writeLoop(int position) {
+        try {
+            this.drain(position);
+        } catch (RuntimeException e) {
+            log.error("saga journal writer failed, no further transitions are recorded", e);
+            this.running = false;
+            this.durableUpdates.tryEmitError(e);
+        }
+    }
+
+    private void drain(int position) {
+        long next = 0;
+        while(true){
+            boolean stopping = !this.running;
+            int slot = (int) (next & this.mask);
+            long first = next;
+            while((long) AVAILABLE.getAcquire(this.available, slot) == next){
+                if(position + RECORD_SIZE > this.segmentSize)
+                    position = this.rollSegment();
+                int base = slot * RING_FIELDS;
+                this.write(position,
+                        this.ring[base],
+                        this.ring[base + 1],
+                        this.ring[base + 2],
+                        this.ring[base + 3],
+                        (int) (this.ring[base + 4] >>> 32),
+                        (int) this.ring[base + 4],
+                        (int) (this.ring[base + 5] >>> 32),
+                        (int) this.ring[base + 5]);
+                this.track(this.ring[base], this.ring[base + 1], (int) this.ring[base + 5]);
+                position += RECORD_SIZE;
+                next++;
+                slot = (int) (next & this.mask);
+            }
+            if(next > first){
+                this.consumedSequence = next - 1;
+                this.segment.force();
+                this.durableSequence = next - 1;
+                this.durableUpdates.tryEmitNext(next - 1);
+            } else if(stopping){
+                return;
+            } else {
+                this.writerParked = true;
+                if((long) AVAILABLE.getVolatile(this.available, slot) != next && this.running)
+                    LockSupport.park(this);
+                this.writerParked = false;
+            }
+        }
+    }
+
+    private void write(int position, long msb, long lsb, long amount, long timestamp, int userId, int productId, int step, int type) {
+        this.segment.putLong(position, msb);
+        this.segment.putLong(position + 8, lsb);
+        this.segment.putLong(position + 16, amount);
+        this.segment.putLong(position + 24, timestamp);
+        this.segment.putInt(position + 32, userId);
+        this.segment.putInt(position + 36, productId);
+        this.segment.putInt(position + 40, step);
+        // type goes last, a zero type marks the end of the written records
+        this.segment.putInt(position + 44, type);
+    }
+
+    private void track(long msb, long lsb, int type) {
+        if(type == JournalEntryType.SAGA_STARTED.code()){
+            this.runningSagas.put(new UUID(msb, lsb), this.segmentNumber);
+            this.runningPerSegment.merge(this.segmentNumber, 1, Integer::sum);
+        } else if(type == JournalEntryType.SAGA_COMPLETED.code() || type == JournalEntryType.SAGA_CANCELLED.code()){
+            Long started = this.runningSagas.remove(new UUID(msb, lsb));
+            if(started != null)
+                this.runningPerSegment.computeIfPresent(started, (number, running) -> running == 1 ? null : running - 1);
+        }
+    }
+
+    private int rewrite(RecoveredSaga saga, int position) {
+        if(position + RECORD_SIZE * (saga.getCompletedSteps().cardinality() + saga.getUnknownSteps().cardinality() + 2L) > this.segmentSize)
+            position = this.rollSegment();
+        OrchestratorRequestDTO request = saga.getRequest();
+        long msb = request.getOrderId().getMostSignificantBits();
+        long lsb = request.getOrderId().getLeastSignificantBits();
+        long now = System.currentTimeMillis();
+        double amount = request.getAmount() == null ? Double.NaN : request.getAmount();
+        this.write(position, msb, lsb, Double.doubleToRawLongBits(amount), now,
+                toInt(request.getUserId()), toInt(request.getProductId()), NO_VALUE, JournalEntryType.SAGA_STARTED.code());
+        position += RECORD_SIZE;
+        for(int step = saga.getCompletedSteps().nextSetBit(0); step >= 0; step = saga.getCompletedSteps().nextSetBit(step + 1)){
+            this.write(position, msb, lsb, Double.doubleToRawLongBits(Double.NaN), now, NO_VALUE, NO_VALUE, step, JournalEntryType.STEP_COMPLETED.code());
+            position += RECORD_SIZE;
+        }
+        for(int step = saga.getUnknownSteps().nextSetBit(0); step >= 0; step = saga.getUnknownSteps().nextSetBit(step + 1)){
+            this.write(position, msb, lsb, Double.doubleToRawLongBits(Double.NaN), now, NO_VALUE, NO_VALUE, step, JournalEntryType.STEP_UNKNOWN.code());
+            position += RECORD_SIZE;
+        }
+        if(saga.isCompensating()){
+            this.write(position, msb, lsb, Double.doubleToRawLongBits(Double.NaN), now, NO_VALUE, NO_VALUE, NO_VALUE, JournalEntryType.SAGA_COMPENSATING.code());
+            position += RECORD_SIZE;
+        }
+        return position;
+    }
+
+    private void readSegment(Path path, Map<UUID, RecoveredSaga> sagas) throws IOException {
+        try(FileChannel readChannel = FileChannel.open(path, StandardOpenOption.READ)){
+            MappedByteBuffer buffer = readChannel.map(FileChannel.MapMode.READ_ONLY, 0, readChannel.size());
+            for(int position = 0; position + RECORD_SIZE <= buffer.limit(); position += RECORD_SIZE){
+                JournalEntryType type = JournalEntryType.fromCode(buffer.getInt(position + 44));
+                if(type == null)
+                    break;
+                UUID orderId = new UUID(buffer.getLong(position), buffer.getLong(position + 8));
+                if(type == JournalEntryType.SAGA_STARTED){
+                    OrchestratorRequestDTO request = new OrchestratorRequestDTO();
+                    double amount = Double.longBitsToDouble(buffer.getLong(position + 16));
+                    request.setOrderId(orderId);
+                    request.setAmount(Double.isNaN(amount) ? null : amount);
+                    request.setUserId(toInteger(buffer.getInt(position + 32)));
+                    request.setProductId(toInteger(buffer.getInt(position + 36)));
+                    sagas.put(orderId, new RecoveredSaga(request));
+                    continue;
+                }
+                RecoveredSaga saga = sagas.get(orderId);
+                if(saga == null)
+                    continue;
+                int step = buffer.getInt(position + 40);
+                // a started step stays unknown until its outcome is journaled
+                switch(type){
+                    case STEP_STARTED:
+                    case STEP_UNKNOWN:
+                        saga.getUnknownSteps().set(step);
+                        break;
+                    case STEP_COMPLETED:
+                        saga.getUnknownSteps().clear(step);
+                        saga.getCompletedSteps().set(step);
+                        break;
+                    case STEP_FAILED:
+                        saga.getUnknownSteps().clear(step);
+                        break;
+                    case STEP_REVERTED:
+                        saga.getUnknownSteps().clear(step);
+                        saga.getCompletedSteps().clear(step);
+                        break;
+                    case SAGA_COMPENSATING:
+                        saga.setCompensating(true);
+                        break;
+                    case SAGA_COMPLETED:
+                    case SAGA_CANCELLED:
+                        sagas.remove(orderId);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            unmap(buffer);
+        }
+    }
+
+    private int rollSegment() {
+        this.segment.force();
+        this.segmentNumber++;
+        this.openSegmentUnchecked();
+        this.deleteFinishedSegments();
+        return 0;
+    }
+
+    // the records of a finished saga in a later segment are skipped on recovery, once its start is gone
+    private void deleteFinishedSegments() {
+        long oldestRunning = this.runningPerSegment.isEmpty() ? this.segmentNumber : this.runningPerSegment.firstKey();
+        for(; this.oldestSegment < oldestRunning; this.oldestSegment++){
+            try {
+                Files.deleteIfExists(this.segmentPath(this.oldestSegment));
+            } catch (IOException e) {
+                log.warn("cannot delete journal segment {}", this.oldestSegment, e);
+            }
+        }
+    }
+
+    private void openSegmentUnchecked() {
+        try {
+            this.openSegment();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        if(this.channel != null){
+            this.channel.close();
+            unmap(this.segment);
+        }
+        this.channel = FileChannel.open(this.segmentPath(this.segmentNumber), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.segment = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, this.segmentSize);
+    }
+
+    private Path segmentPath(long number) {
+        return this.directory.resolve(String.format("%020d%s", number, SEGMENT_SUFFIX));
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try(Stream<Path> files = Files.list(this.directory)){
+            return files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    // a closed channel keeps its mapping, and the file its disk space, until the buffer is collected
+    private static void unmap(MappedByteBuffer buffer) {
+        if(INVOKE_CLEANER == null)
+            return;
+        try {
+            INVOKE_CLEANER.invoke(UNSAFE, buffer);
+        } catch (ReflectiveOperationException e) {
+            log.warn("cannot unmap journal segment", e);
+        }
+    }
+
+    private static int toInt(Integer value) {
+        return value == null ? NO_VALUE : value;
+    }
+
+    private static Integer toInteger(int value) {
+        return value == NO_VALUE ? null : value;
+    }
+
+}
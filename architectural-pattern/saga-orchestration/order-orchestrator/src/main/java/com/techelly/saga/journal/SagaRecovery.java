@@ -0,0 +1,33 @@
+package com.techelly.saga.journal;
+
+import com.techelly.saga.service.OrchestratorService;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cloud.stream.function.StreamBridge;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+// resumes or compensates the sagas left unfinished by the previous run, and publishes their outcome
+@Component
+public class SagaRecovery {
+
+    @Autowired
+    private SagaJournal journal;
+
+    @Autowired
+    private OrchestratorService orchestratorService;
+
+    @Autowired
+    private StreamBridge streamBridge;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void recover(){
+        Flux.fromIterable(this.journal.getRecoveredSagas())
+                .flatMap(this.orchestratorService::resumeOrder)
+                .doOnNext(dto -> System.out.println("Recovered : " + dto.getOrderId() + " " + dto.getStatus()))
+                .subscribe(dto -> this.streamBridge.send("processor-out-0", dto));
+    }
+
+}
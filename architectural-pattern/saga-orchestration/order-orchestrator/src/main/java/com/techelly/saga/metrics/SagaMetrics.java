@@ -0,0 +1,143 @@
+package com.techelly.saga.metrics;
+
+import com.techelly.enums.OrderStatus;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * saga.step     - timer per step, tagged by step, action (process / revert) and outcome
+ * saga.duration - end to end timer per saga, tagged by outcome
+ * saga.inflight - sagas currently running
+ * saga.compensations - sagas which had to be compensated
+ * saga.compensations.retrying - sagas whose compensation failed and is retried in the background
+ * saga.compensations.failed   - sagas still not compensated once the retries were used up
+ * histogram buckets come from management.metrics.distribution.slo
+ * the timers are registered once, the saga ones up front and the ones of a step on its first run, so recording only looks them up
+ */
+@Component
+public class SagaMetrics {
+
+    private static final String[] STEP_OUTCOMES = {"success", "rejected", "empty", "error", "cancelled"};
+    private static final int SUCCESS = 0;
+    private static final int REJECTED = 1;
+    private static final int EMPTY = 2;
+    private static final int ERROR = 3;
+    private static final int CANCELLED = 4;
+    private static final String[] ACTIONS = {"process", "revert"};
+    private static final String[] SAGA_OUTCOMES = {"completed", "cancelled", "empty", "error"};
+
+    private final MeterRegistry registry;
+    private final Map<String, Map<String, Timer[]>> stepTimers = new ConcurrentHashMap<>();
+    private final Map<String, Timer> sagaTimers = new HashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter compensations;
+    private final AtomicInteger retryingCompensations = new AtomicInteger();
+    private final Counter failedCompensations;
+
+    public SagaMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.compensations = Counter.builder("saga.compensations")
+                .description("sagas which had to be compensated")
+                .register(registry);
+        this.failedCompensations = Counter.builder("saga.compensations.failed")
+                .description("sagas still not compensated once the retries were used up")
+                .register(registry);
+        Gauge.builder("saga.inflight", this.inFlight, AtomicInteger::get)
+                .description("sagas currently running")
+                .register(registry);
+        Gauge.builder("saga.compensations.retrying", this.retryingCompensations, AtomicInteger::get)
+                .description("sagas whose compensation failed and is retried in the background")
+                .register(registry);
+        for(String outcome : SAGA_OUTCOMES)
+            this.sagaTimers.put(outcome, this.sagaTimer(outcome));
+    }
+
+    public Mono<Boolean> timeStep(final String step, final String action, final Mono<Boolean> mono) {
+        return Mono.defer(() -> {
+            Timer[] timers = this.stepTimers(step, action);
+            long start = System.nanoTime();
+            return mono
+                    .doOnSuccess(b -> record(timers[b == null ? EMPTY : b ? SUCCESS : REJECTED], start))
+                    .doOnError(ex -> record(timers[ERROR], start))
+                    .doOnCancel(() -> record(timers[CANCELLED], start));
+        });
+    }
+
+    // returns the start time to hand back to sagaFinished
+    public long sagaStarted() {
+        this.inFlight.incrementAndGet();
+        return System.nanoTime();
+    }
+
+    public void sagaFinished(final long start, final String outcome) {
+        this.inFlight.decrementAndGet();
+        Timer timer = this.sagaTimers.get(outcome);
+        record(timer != null ? timer : this.sagaTimer(outcome), start);
+    }
+
+    public static String outcome(final OrderStatus status) {
+        return status == OrderStatus.ORDER_COMPLETED ? "completed" : "cancelled";
+    }
+
+    public void compensationStarted() {
+        this.compensations.increment();
+    }
+
+    public void compensationRetryStarted() {
+        this.retryingCompensations.incrementAndGet();
+    }
+
+    public void compensationRetryFinished(final boolean failed) {
+        this.retryingCompensations.decrementAndGet();
+        if(failed)
+            this.failedCompensations.increment();
+    }
+
+    // one timer per outcome, in the order of STEP_OUTCOMES. both actions of a step are registered when it first runs
+    private Timer[] stepTimers(final String step, final String action) {
+        Map<String, Timer[]> actions = this.stepTimers.get(step);
+        if(actions == null){
+            actions = this.stepTimers.computeIfAbsent(step, s -> {
+                Map<String, Timer[]> registered = new ConcurrentHashMap<>();
+                for(String a : ACTIONS)
+                    registered.put(a, this.registerStep(s, a));
+                return registered;
+            });
+        }
+        Timer[] timers = actions.get(action);
+        return timers != null ? timers : actions.computeIfAbsent(action, a -> this.registerStep(step, a));
+    }
+
+    private Timer[] registerStep(final String step, final String action) {
+        Timer[] timers = new Timer[STEP_OUTCOMES.length];
+        for(int i = 0; i < STEP_OUTCOMES.length; i++)
+            timers[i] = Timer.builder("saga.step")
+                    .tag("step", step)
+                    .tag("action", action)
+                    .tag("outcome", STEP_OUTCOMES[i])
+                    .register(this.registry);
+        return timers;
+    }
+
+    private Timer sagaTimer(final String outcome) {
+        return Timer.builder("saga.duration")
+                .tag("outcome", outcome)
+                .register(this.registry);
+    }
+
+    private static void record(final Timer timer, final long start) {
+        timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+}
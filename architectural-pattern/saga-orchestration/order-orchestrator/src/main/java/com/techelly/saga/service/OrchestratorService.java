@@ -1,25 +1,55 @@
 package com.techelly.saga.service;
 
+import com.techelly.saga.journal.JournalEntryType;
+import com.techelly.saga.journal.JournaledStep;
+import com.techelly.saga.journal.RecoveredSaga;
+import com.techelly.saga.journal.SagaJournal;
+import com.techelly.saga.metrics.SagaMetrics;
+import com.techelly.saga.service.batch.RequestBatcher;
 import com.techelly.saga.service.steps.InventoryStep;
 import com.techelly.saga.service.steps.PaymentStep;
 import com.techelly.dto.InventoryRequestDTO;
+import com.techelly.dto.InventoryResponseDTO;
 import com.techelly.dto.OrchestratorRequestDTO;
 import com.techelly.dto.OrchestratorResponseDTO;
 import com.techelly.dto.PaymentRequestDTO;
+import com.techelly.dto.PaymentResponseDTO;
 import com.techelly.enums.OrderStatus;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.stream.function.StreamBridge;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
-import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
 
-import java.util.List;
+import java.time.Duration;
+import java.util.BitSet;
 
 @Service
 public class OrchestratorService {
 
+    private static final Logger log = LoggerFactory.getLogger(OrchestratorService.class);
+
+    @Value("${saga.deadline:2s}")
+    private Duration sagaDeadline;
+
+    @Value("${saga.revert-timeout:2s}")
+    private Duration revertTimeout;
+
+    @Value("${saga.compensation.retries:10}")
+    private long compensationRetries;
+
+    @Value("${saga.compensation.min-backoff:1s}")
+    private Duration compensationMinBackoff;
+
+    @Value("${saga.compensation.max-backoff:1m}")
+    private Duration compensationMaxBackoff;
+
     @Autowired
     @Qualifier("payment")
     private WebClient paymentClient;
@@ -28,33 +58,132 @@ public class OrchestratorService {
     @Qualifier("inventory")
     private WebClient inventoryClient;
 
+    @Autowired
+    private RequestBatcher<PaymentRequestDTO, PaymentResponseDTO> paymentBatcher;
+
+    @Autowired
+    private RequestBatcher<InventoryRequestDTO, InventoryResponseDTO> inventoryBatcher;
+
+    @Autowired
+    private WorkflowExecutor workflowExecutor;
+
+    @Autowired
+    private SagaJournal journal;
+
+    @Autowired
+    private SagaMetrics metrics;
+
+    @Autowired
+    private StreamBridge streamBridge;
+
+    // the whole saga has to finish within the deadline, each step gets whatever is left of it
     public Mono<OrchestratorResponseDTO> orderProduct(final OrchestratorRequestDTO requestDTO){
-        Workflow orderWorkflow = this.getOrderWorkflow(requestDTO);
-        return Flux.fromStream(() -> orderWorkflow.getSteps().stream())
-                .flatMap(WorkflowStep::process)
-                .handle(((aBoolean, synchronousSink) -> {
-                    if(aBoolean)
-                        synchronousSink.next(true);
-                    else
-                        synchronousSink.error(new WorkflowException("create order failed!"));
-                }))
-                .then(Mono.fromCallable(() -> getResponseDTO(requestDTO, OrderStatus.ORDER_COMPLETED)))
-                .onErrorResume(ex -> this.revertOrder(orderWorkflow, requestDTO));
+        return this.measure(Mono.defer(() -> {
+            long deadline = System.currentTimeMillis() + this.sagaDeadline.toMillis();
+            Workflow orderWorkflow = this.getOrderWorkflow(requestDTO, new BitSet(), new BitSet(), deadline);
+            return this.journal.sagaStarted(requestDTO)
+                    .then(this.runOrder(orderWorkflow, requestDTO, deadline));
+        }));
+    }
 
+    /*
+     * continues a saga which was still running when the orchestrator stopped. it starts over with a fresh deadline.
+     * a saga with a step of unknown outcome is compensated, that step may or may not have been applied
+     */
+    public Mono<OrchestratorResponseDTO> resumeOrder(final RecoveredSaga saga){
+        return this.measure(Mono.defer(() -> {
+            long deadline = System.currentTimeMillis() + this.sagaDeadline.toMillis();
+            Workflow orderWorkflow = this.getOrderWorkflow(saga.getRequest(), saga.getCompletedSteps(), saga.getUnknownSteps(), deadline);
+            return saga.needsCompensation()
+                    ? this.revertOrder(orderWorkflow, saga.getRequest())
+                    : this.runOrder(orderWorkflow, saga.getRequest(), deadline);
+        }));
     }
 
+    private Mono<OrchestratorResponseDTO> measure(final Mono<OrchestratorResponseDTO> saga){
+        return Mono.defer(() -> {
+            long start = this.metrics.sagaStarted();
+            return saga
+                    .doOnSuccess(dto -> this.metrics.sagaFinished(start, dto == null ? "empty" : SagaMetrics.outcome(dto.getStatus())))
+                    .doOnError(ex -> this.metrics.sagaFinished(start, "error"))
+                    .doOnCancel(() -> this.metrics.sagaFinished(start, "cancelled"));
+        });
+    }
+
+    // running out of time cancels the steps still in flight and compensates the saga
+    private Mono<OrchestratorResponseDTO> runOrder(final Workflow workflow, final OrchestratorRequestDTO requestDTO, final long deadline){
+        return Mono.defer(() -> this.workflowExecutor.process(workflow)
+                        .timeout(Duration.ofMillis(Math.max(0, deadline - System.currentTimeMillis()))))
+                .then(Mono.fromCallable(() -> {
+                    this.journal.record(requestDTO.getOrderId(), JournalEntryType.SAGA_COMPLETED);
+                    return getResponseDTO(requestDTO, OrderStatus.ORDER_COMPLETED);
+                }))
+                .onErrorResume(ex -> this.revertOrder(workflow, requestDTO));
+    }
+
+    /*
+     * the saga is cancelled only once every revert went through. otherwise its compensation is retried in the
+     * background with a backoff, so the lane can go on with the next order, and the cancellation is published once
+     * it went through. a saga still not compensated after the retries stays compensating in the journal, it counts
+     * as saga.compensations.failed and is compensated again by the recovery of the next start
+     */
     private Mono<OrchestratorResponseDTO> revertOrder(final Workflow workflow, final OrchestratorRequestDTO requestDTO){
-        return Flux.fromStream(() -> workflow.getSteps().stream())
-                .filter(wf -> wf.getStatus().equals(WorkflowStepStatus.COMPLETE))
-                .flatMap(WorkflowStep::revert)
-                .retry(3)
-                .then(Mono.just(this.getResponseDTO(requestDTO, OrderStatus.ORDER_CANCELLED)));
+        return Mono.fromRunnable(() -> {
+                    this.metrics.compensationStarted();
+                    this.journal.record(requestDTO.getOrderId(), JournalEntryType.SAGA_COMPENSATING);
+                })
+                .then(this.compensate(workflow, requestDTO))
+                .onErrorResume(ex -> {
+                    this.retryCompensation(workflow, requestDTO);
+                    return Mono.empty();
+                });
+    }
+
+    private Mono<OrchestratorResponseDTO> compensate(final Workflow workflow, final OrchestratorRequestDTO requestDTO){
+        return this.workflowExecutor.revert(workflow)
+                .then(Mono.fromCallable(() -> {
+                    this.journal.record(requestDTO.getOrderId(), JournalEntryType.SAGA_CANCELLED);
+                    return this.getResponseDTO(requestDTO, OrderStatus.ORDER_CANCELLED);
+                }));
+    }
+
+    // the steps reverted already are REVERTED by now, a retry only reverts the ones which failed
+    private void retryCompensation(final Workflow workflow, final OrchestratorRequestDTO requestDTO){
+        this.metrics.compensationRetryStarted();
+        Mono.defer(() -> this.compensate(workflow, requestDTO))
+                .retryWhen(Retry.backoff(this.compensationRetries, this.compensationMinBackoff)
+                        .maxBackoff(this.compensationMaxBackoff))
+                .subscribe(
+                        dto -> {
+                            this.metrics.compensationRetryFinished(false);
+                            this.streamBridge.send("processor-out-0", dto);
+                        },
+                        ex -> {
+                            this.metrics.compensationRetryFinished(true);
+                            log.error("compensation of order {} failed, it is retried on the next start", requestDTO.getOrderId(), ex);
+                        });
+    }
+
+    private Workflow getOrderWorkflow(OrchestratorRequestDTO requestDTO, BitSet completedSteps, BitSet unknownSteps, long deadline){
+        WorkflowStep paymentStep = new JournaledStep(
+                new PaymentStep(this.paymentClient, this.paymentBatcher, this.getPaymentRequestDTO(requestDTO),
+                        deadline, this.revertTimeout),
+                this.journal, requestDTO.getOrderId(), 0, this.recoveredStatus(completedSteps, unknownSteps, 0));
+        WorkflowStep inventoryStep = new JournaledStep(
+                new InventoryStep(this.inventoryClient, this.inventoryBatcher, this.getInventoryRequestDTO(requestDTO),
+                        deadline, this.revertTimeout),
+                this.journal, requestDTO.getOrderId(), 1, this.recoveredStatus(completedSteps, unknownSteps, 1));
+        // payment and inventory do not depend on each other, so both run side by side
+        return OrderWorkflow.builder()
+                .step(paymentStep)
+                .step(inventoryStep)
+                .build();
     }
 
-    private Workflow getOrderWorkflow(OrchestratorRequestDTO requestDTO){
-        WorkflowStep paymentStep = new PaymentStep(this.paymentClient, this.getPaymentRequestDTO(requestDTO));
-        WorkflowStep inventoryStep = new InventoryStep(this.inventoryClient, this.getInventoryRequestDTO(requestDTO));
-        return new OrderWorkflow(List.of(paymentStep, inventoryStep));
+    private WorkflowStepStatus recoveredStatus(BitSet completedSteps, BitSet unknownSteps, int step){
+        if(completedSteps.get(step))
+            return WorkflowStepStatus.COMPLETE;
+        return unknownSteps.get(step) ? WorkflowStepStatus.UNKNOWN : null;
     }
 
     private OrchestratorResponseDTO getResponseDTO(OrchestratorRequestDTO requestDTO, OrderStatus status){
@@ -1,13 +1,31 @@
 package com.techelly.saga.service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class OrderWorkflow implements Workflow {
 
     private final List<WorkflowStep> steps;
+    private final Map<WorkflowStep, Set<WorkflowStep>> dependencies;
+    private final int concurrency;
 
     public OrderWorkflow(List<WorkflowStep> steps) {
-        this.steps = steps;
+        this(steps, Collections.emptyMap(), Math.max(1, steps.size()));
+    }
+
+    private OrderWorkflow(List<WorkflowStep> steps, Map<WorkflowStep, Set<WorkflowStep>> dependencies, int concurrency) {
+        this.steps = List.copyOf(steps);
+        this.dependencies = dependencies;
+        this.concurrency = concurrency;
+    }
+
+    public static Builder builder() {
+        return new Builder();
     }
 
     @Override
@@ -15,4 +33,46 @@ public class OrderWorkflow implements Workflow {
         return this.steps;
     }
 
+    @Override
+    public Set<WorkflowStep> getDependencies(WorkflowStep step) {
+        return this.dependencies.getOrDefault(step, Collections.emptySet());
+    }
+
+    @Override
+    public int getConcurrency() {
+        return this.concurrency;
+    }
+
+    public static class Builder {
+
+        private final List<WorkflowStep> steps = new ArrayList<>();
+        private final Map<WorkflowStep, Set<WorkflowStep>> dependencies = new HashMap<>();
+        private int concurrency;
+
+        public Builder step(WorkflowStep step, WorkflowStep... dependsOn) {
+            if(this.dependencies.containsKey(step))
+                throw new WorkflowException("step already added : " + step);
+            for(WorkflowStep dependency : dependsOn){
+                if(!this.dependencies.containsKey(dependency))
+                    throw new WorkflowException("dependency must be added before its dependents : " + dependency);
+            }
+            this.steps.add(step);
+            this.dependencies.put(step, Collections.unmodifiableSet(new LinkedHashSet<>(List.of(dependsOn))));
+            return this;
+        }
+
+        public Builder concurrency(int concurrency) {
+            if(concurrency < 1)
+                throw new WorkflowException("concurrency must be positive : " + concurrency);
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        public OrderWorkflow build() {
+            int limit = this.concurrency > 0 ? this.concurrency : Math.max(1, this.steps.size());
+            return new OrderWorkflow(this.steps, Map.copyOf(this.dependencies), limit);
+        }
+
+    }
+
 }
@@ -1,9 +1,16 @@
 package com.techelly.saga.service;
 
 import java.util.List;
+import java.util.Set;
 
 public interface Workflow {
 
     List<WorkflowStep> getSteps();
 
+    // steps which must complete before the given step is started
+    Set<WorkflowStep> getDependencies(WorkflowStep step);
+
+    // max number of steps running at the same time
+    int getConcurrency();
+
 }
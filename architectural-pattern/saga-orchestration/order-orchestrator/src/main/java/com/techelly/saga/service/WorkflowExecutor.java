@@ -0,0 +1,116 @@
+package com.techelly.saga.service;
+
+import com.techelly.saga.metrics.SagaMetrics;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Component
+public class WorkflowExecutor {
+
+    @Autowired
+    private SagaMetrics metrics;
+
+    // runs every step once all of its dependencies are complete. fails on the first rejected step
+    public Mono<Void> process(final Workflow workflow){
+        Map<WorkflowStep, List<WorkflowStep>> dependents = this.getDependents(workflow, workflow.getSteps());
+        return this.traverse(
+                workflow.getSteps(),
+                workflow::getDependencies,
+                dependents::get,
+                step -> this.metrics.timeStep(step.getName(), "process", step.process())
+                            .handle((aBoolean, synchronousSink) -> {
+                                if(aBoolean)
+                                    synchronousSink.next(true);
+                                else
+                                    synchronousSink.error(new WorkflowException("create order failed!"));
+                            }),
+                workflow.getConcurrency()
+        );
+    }
+
+    /*
+     * reverts the completed steps in reverse topological order. independent reverts run side by side.
+     * steps whose outcome is unknown, because the saga ran out of time while they were in flight, are reverted as well.
+     * a revert which did not go through is retried, and fails the whole revert once the retries are used up
+     */
+    public Mono<Void> revert(final Workflow workflow){
+        List<WorkflowStep> completed = workflow.getSteps()
+                .stream()
+                .filter(step -> step.getStatus() == WorkflowStepStatus.COMPLETE || step.getStatus() == WorkflowStepStatus.UNKNOWN)
+                .collect(Collectors.toList());
+        Map<WorkflowStep, List<WorkflowStep>> dependents = this.getDependents(workflow, completed);
+        return this.traverse(
+                completed,
+                dependents::get,
+                step -> workflow.getDependencies(step)
+                                .stream()
+                                .filter(dependents::containsKey)
+                                .collect(Collectors.toList()),
+                step -> this.metrics.timeStep(step.getName(), "revert", step.revert())
+                            .handle((aBoolean, synchronousSink) -> {
+                                if(aBoolean)
+                                    synchronousSink.next(true);
+                                else
+                                    synchronousSink.error(new WorkflowException("revert order failed!"));
+                            })
+                            .retry(3),
+                workflow.getConcurrency()
+        );
+    }
+
+    private Mono<Void> traverse(final List<WorkflowStep> steps,
+                                final Function<WorkflowStep, Collection<WorkflowStep>> prerequisites,
+                                final Function<WorkflowStep, Collection<WorkflowStep>> successors,
+                                final Function<WorkflowStep, Mono<?>> action,
+                                final int concurrency){
+        if(steps.isEmpty())
+            return Mono.empty();
+        return Mono.defer(() -> {
+            Map<WorkflowStep, AtomicInteger> pending = new HashMap<>();
+            AtomicInteger remaining = new AtomicInteger(steps.size());
+            Sinks.Many<WorkflowStep> ready = Sinks.many().unicast().onBackpressureBuffer();
+            steps.forEach(step -> pending.put(step, new AtomicInteger(prerequisites.apply(step).size())));
+            steps.stream()
+                    .filter(step -> pending.get(step).get() == 0)
+                    .forEach(ready::tryEmitNext);
+            // flatMap serializes its output, so the bookkeeping below never runs concurrently
+            return ready.asFlux()
+                    .flatMap(step -> action.apply(step).then(Mono.just(step)), concurrency)
+                    .doOnNext(step -> {
+                        for(WorkflowStep next : successors.apply(step)){
+                            if(pending.get(next).decrementAndGet() == 0)
+                                ready.tryEmitNext(next);
+                        }
+                        if(remaining.decrementAndGet() == 0)
+                            ready.tryEmitComplete();
+                    })
+                    .then();
+        });
+    }
+
+    private Map<WorkflowStep, List<WorkflowStep>> getDependents(final Workflow workflow, final List<WorkflowStep> steps){
+        Map<WorkflowStep, List<WorkflowStep>> dependents = new HashMap<>();
+        steps.forEach(step -> dependents.put(step, new ArrayList<>()));
+        for(WorkflowStep step : steps){
+            Set<WorkflowStep> dependencies = workflow.getDependencies(step);
+            dependencies.stream()
+                    .filter(dependents::containsKey)
+                    .forEach(dependency -> dependents.get(dependency).add(step));
+        }
+        return dependents;
+    }
+
+}
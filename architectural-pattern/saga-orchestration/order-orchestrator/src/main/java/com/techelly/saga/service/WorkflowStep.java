@@ -4,6 +4,10 @@ import reactor.core.publisher.Mono;
 
 public interface WorkflowStep {
 
+    default String getName() {
+        return this.getClass().getSimpleName();
+    }
+
     WorkflowStepStatus getStatus();
     Mono<Boolean> process();
     Mono<Boolean> revert();
@@ -3,5 +3,9 @@ package com.techelly.saga.service;
 public enum WorkflowStepStatus {
     PENDING,
     COMPLETE,
-    FAILED;
+    FAILED,
+    // the request was sent but no answer arrived in time, so it may or may not have been applied
+    UNKNOWN,
+    // compensated, a later revert of the saga leaves it alone
+    REVERTED;
 }
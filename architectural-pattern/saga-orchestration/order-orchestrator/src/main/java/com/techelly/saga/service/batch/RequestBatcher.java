@@ -0,0 +1,102 @@
+package com.techelly.saga.service.batch;
+
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+
+/*
+ * Gathers requests submitted by concurrent sagas into one downstream call.
+ * A batch is sent once it has maxSize items or maxWait has passed since its first item,
+ * and the results are handed back to each caller by position.
+ * Every request carries the deadline of its saga. Cancelled and expired requests are dropped before the call,
+ * and the call itself is given the latest deadline of the batch.
+ */
+public class RequestBatcher<T, R> implements Disposable {
+
+    private final BiFunction<List<T>, Long, Mono<List<R>>> batchCall;
+    private final Disposable subscription;
+    private FluxSink<Entry<T, R>> entrySink;
+
+    public RequestBatcher(BiFunction<List<T>, Long, Mono<List<R>>> batchCall, int maxSize, Duration maxWait, int maxInFlightBatches) {
+        this.batchCall = batchCall;
+        this.subscription = Flux.<Entry<T, R>>create(sink -> this.entrySink = sink)
+                .bufferTimeout(maxSize, maxWait)
+                .onBackpressureBuffer()
+                .flatMap(this::dispatch, maxInFlightBatches)
+                .subscribe();
+    }
+
+    // deadline is in epoch millis
+    public Mono<R> submit(final T request, final long deadline) {
+        return Mono.create(sink -> {
+            Entry<T, R> entry = new Entry<>(request, deadline, sink);
+            sink.onCancel(() -> entry.cancelled = true);
+            this.entrySink.next(entry);
+        });
+    }
+
+    private Mono<Void> dispatch(final List<Entry<T, R>> batch) {
+        long now = System.currentTimeMillis();
+        List<Entry<T, R>> entries = batch.stream()
+                .filter(e -> !e.cancelled)
+                .filter(e -> {
+                    if(e.deadline > now)
+                        return true;
+                    e.sink.error(new TimeoutException("saga deadline passed before the request was sent"));
+                    return false;
+                })
+                .collect(Collectors.toList());
+        if(entries.isEmpty())
+            return Mono.empty();
+        List<T> requests = entries.stream()
+                .map(e -> e.request)
+                .collect(Collectors.toList());
+        long deadline = entries.stream().mapToLong(e -> e.deadline).max().getAsLong();
+        return Mono.defer(() -> this.batchCall.apply(requests, deadline))
+                .timeout(Duration.ofMillis(deadline - now))
+                .defaultIfEmpty(List.of())
+                .doOnNext(results -> {
+                    if(results.size() != entries.size())
+                        throw new IllegalStateException("expected " + entries.size() + " results, got " + results.size());
+                    for(int i = 0; i < entries.size(); i++)
+                        entries.get(i).sink.success(results.get(i));
+                })
+                .doOnError(ex -> entries.forEach(e -> e.sink.error(ex)))
+                .onErrorResume(ex -> Mono.empty())
+                .then();
+    }
+
+    @Override
+    public void dispose() {
+        this.subscription.dispose();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return this.subscription.isDisposed();
+    }
+
+    private static class Entry<T, R> {
+
+        private final T request;
+        private final long deadline;
+        private final MonoSink<R> sink;
+        private volatile boolean cancelled;
+
+        private Entry(T request, long deadline, MonoSink<R> sink) {
+            this.request = request;
+            this.deadline = deadline;
+            this.sink = sink;
+        }
+
+    }
+
+}
@@ -2,6 +2,8 @@ package com.techelly.saga.service.steps;
 
 import com.techelly.saga.service.WorkflowStep;
 import com.techelly.saga.service.WorkflowStepStatus;
+import com.techelly.saga.service.batch.RequestBatcher;
+import com.techelly.deadline.DeadlineWebFilter;
 import com.techelly.dto.InventoryRequestDTO;
 import com.techelly.dto.InventoryResponseDTO;
 import com.techelly.enums.InventoryStatus;
@@ -10,15 +12,24 @@ import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+
 public class InventoryStep implements WorkflowStep {
 
     private final WebClient webClient;
+    private final RequestBatcher<InventoryRequestDTO, InventoryResponseDTO> batcher;
     private final InventoryRequestDTO requestDTO;
-    private WorkflowStepStatus stepStatus = WorkflowStepStatus.PENDING;
+    private final long deadline;
+    private final Duration revertTimeout;
+    private volatile WorkflowStepStatus stepStatus = WorkflowStepStatus.PENDING;
 
-    public InventoryStep(WebClient webClient, InventoryRequestDTO requestDTO) {
+    public InventoryStep(WebClient webClient, RequestBatcher<InventoryRequestDTO, InventoryResponseDTO> batcher,
+                         InventoryRequestDTO requestDTO, long deadline, Duration revertTimeout) {
         this.webClient = webClient;
+        this.batcher = batcher;
         this.requestDTO = requestDTO;
+        this.deadline = deadline;
+        this.revertTimeout = revertTimeout;
     }
 
     @Override
@@ -28,25 +39,26 @@ public class InventoryStep implements WorkflowStep {
 
     @Override
     public Mono<Boolean> process() {
-        return this.webClient
-                .post()
-                .uri("/inventory/deduct")
-                .body(BodyInserters.fromValue(this.requestDTO))
-                .retrieve()
-                .bodyToMono(InventoryResponseDTO.class)
+        return this.batcher
+                .submit(this.requestDTO, this.deadline)
                 .map(r -> r.getStatus().equals(InventoryStatus.AVAILABLE))
-                .doOnNext(b -> this.stepStatus = b ? WorkflowStepStatus.COMPLETE : WorkflowStepStatus.FAILED);
+                .doOnNext(b -> this.stepStatus = b ? WorkflowStepStatus.COMPLETE : WorkflowStepStatus.FAILED)
+                .doOnError(ex -> this.stepStatus = WorkflowStepStatus.UNKNOWN)
+                .doOnCancel(() -> this.stepStatus = WorkflowStepStatus.UNKNOWN);
     }
 
+    // compensation gets a budget of its own, the one of the saga is usually spent by now
     @Override
     public Mono<Boolean> revert() {
-        return this.webClient
-                    .post()
-                    .uri("/inventory/add")
-                    .body(BodyInserters.fromValue(this.requestDTO))
-                    .retrieve()
-                    .bodyToMono(Void.class)
-                    .map(r ->true)
-                    .onErrorReturn(false);
+        return Mono.defer(() -> this.webClient
+                .post()
+                .uri("/inventory/add")
+                .header(DeadlineWebFilter.HEADER, String.valueOf(System.currentTimeMillis() + this.revertTimeout.toMillis()))
+                .body(BodyInserters.fromValue(this.requestDTO))
+                .retrieve()
+                .bodyToMono(Void.class))
+                .timeout(this.revertTimeout)
+                .thenReturn(true)
+                .onErrorReturn(false);
     }
 }
@@ -2,6 +2,8 @@ package com.techelly.saga.service.steps;
 
 import com.techelly.saga.service.WorkflowStep;
 import com.techelly.saga.service.WorkflowStepStatus;
+import com.techelly.saga.service.batch.RequestBatcher;
+import com.techelly.deadline.DeadlineWebFilter;
 import com.techelly.dto.PaymentRequestDTO;
 import com.techelly.dto.PaymentResponseDTO;
 import com.techelly.enums.PaymentStatus;
@@ -10,15 +12,24 @@ import org.springframework.web.reactive.function.BodyInserters;
 import org.springframework.web.reactive.function.client.WebClient;
 import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+
 public class PaymentStep implements WorkflowStep {
 
     private final WebClient webClient;
+    private final RequestBatcher<PaymentRequestDTO, PaymentResponseDTO> batcher;
     private final PaymentRequestDTO requestDTO;
-    private WorkflowStepStatus stepStatus = WorkflowStepStatus.PENDING;
+    private final long deadline;
+    private final Duration revertTimeout;
+    private volatile WorkflowStepStatus stepStatus = WorkflowStepStatus.PENDING;
 
-    public PaymentStep(WebClient webClient, PaymentRequestDTO requestDTO) {
+    public PaymentStep(WebClient webClient, RequestBatcher<PaymentRequestDTO, PaymentResponseDTO> batcher,
+                       PaymentRequestDTO requestDTO, long deadline, Duration revertTimeout) {
         this.webClient = webClient;
+        this.batcher = batcher;
         this.requestDTO = requestDTO;
+        this.deadline = deadline;
+        this.revertTimeout = revertTimeout;
     }
 
     @Override
@@ -28,25 +39,26 @@ public class PaymentStep implements WorkflowStep {
 
     @Override
     public Mono<Boolean> process() {
-        return this.webClient
-                    .post()
-                    .uri("/payment/debit")
-                    .body(BodyInserters.fromValue(this.requestDTO))
-                    .retrieve()
-                    .bodyToMono(PaymentResponseDTO.class)
-                    .map(r -> r.getStatus().equals(PaymentStatus.PAYMENT_APPROVED))
-                    .doOnNext(b -> this.stepStatus = b ? WorkflowStepStatus.COMPLETE : WorkflowStepStatus.FAILED);
+        return this.batcher
+                .submit(this.requestDTO, this.deadline)
+                .map(r -> r.getStatus().equals(PaymentStatus.PAYMENT_APPROVED))
+                .doOnNext(b -> this.stepStatus = b ? WorkflowStepStatus.COMPLETE : WorkflowStepStatus.FAILED)
+                .doOnError(ex -> this.stepStatus = WorkflowStepStatus.UNKNOWN)
+                .doOnCancel(() -> this.stepStatus = WorkflowStepStatus.UNKNOWN);
     }
 
+    // compensation gets a budget of its own, the one of the saga is usually spent by now
     @Override
     public Mono<Boolean> revert() {
-        return this.webClient
+        return Mono.defer(() -> this.webClient
                 .post()
                 .uri("/payment/credit")
+                .header(DeadlineWebFilter.HEADER, String.valueOf(System.currentTimeMillis() + this.revertTimeout.toMillis()))
                 .body(BodyInserters.fromValue(this.requestDTO))
                 .retrieve()
-                .bodyToMono(Void.class)
-                .map(r -> true)
+                .bodyToMono(Void.class))
+                .timeout(this.revertTimeout)
+                .thenReturn(true)
                 .onErrorReturn(false);
     }
 
@@ -0,0 +1,149 @@
+package com.techelly.saga.journal;
+
+import com.techelly.dto.OrchestratorRequestDTO;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SagaJournalTests {
+
+    @TempDir
+    Path directory;
+
+    private SagaJournal open() {
+        SagaJournal journal = new SagaJournal(this.directory.toString(), DataSize.ofKilobytes(64), 1024, true);
+        ReflectionTestUtils.invokeMethod(journal, "init");
+        return journal;
+    }
+
+    private void close(SagaJournal journal) {
+        ReflectionTestUtils.invokeMethod(journal, "close");
+    }
+
+    private OrchestratorRequestDTO request() {
+        OrchestratorRequestDTO request = new OrchestratorRequestDTO();
+        request.setOrderId(UUID.randomUUID());
+        request.setUserId(7);
+        request.setProductId(3);
+        request.setAmount(100d);
+        return request;
+    }
+
+    private Map<UUID, RecoveredSaga> recover() {
+        SagaJournal journal = this.open();
+        List<RecoveredSaga> sagas = journal.getRecoveredSagas();
+        this.close(journal);
+        return sagas.stream().collect(Collectors.toMap(saga -> saga.getRequest().getOrderId(), Function.identity()));
+    }
+
+    private long segments() throws IOException {
+        try(Stream<Path> files = Files.list(this.directory)){
+            return files.count();
+        }
+    }
+
+    private static BitSet steps(int... indexes) {
+        BitSet steps = new BitSet();
+        for(int index : indexes)
+            steps.set(index);
+        return steps;
+    }
+
+    @Test
+    void replaysHalfFinishedSagas() {
+        OrchestratorRequestDTO running = this.request();
+        OrchestratorRequestDTO completed = this.request();
+        OrchestratorRequestDTO compensating = this.request();
+
+        SagaJournal journal = this.open();
+        journal.sagaStarted(running).block();
+        journal.record(running.getOrderId(), JournalEntryType.STEP_STARTED, 0);
+        journal.record(running.getOrderId(), JournalEntryType.STEP_COMPLETED, 0);
+        journal.record(running.getOrderId(), JournalEntryType.STEP_STARTED, 1);
+
+        journal.sagaStarted(completed).block();
+        journal.record(completed.getOrderId(), JournalEntryType.STEP_STARTED, 0);
+        journal.record(completed.getOrderId(), JournalEntryType.STEP_STARTED, 1);
+        journal.record(completed.getOrderId(), JournalEntryType.STEP_COMPLETED, 1);
+        journal.record(completed.getOrderId(), JournalEntryType.STEP_COMPLETED, 0);
+        journal.record(completed.getOrderId(), JournalEntryType.SAGA_COMPLETED);
+
+        journal.sagaStarted(compensating).block();
+        journal.record(compensating.getOrderId(), JournalEntryType.STEP_STARTED, 0);
+        journal.record(compensating.getOrderId(), JournalEntryType.STEP_STARTED, 1);
+        journal.record(compensating.getOrderId(), JournalEntryType.STEP_COMPLETED, 0);
+        journal.record(compensating.getOrderId(), JournalEntryType.STEP_UNKNOWN, 1);
+        journal.record(compensating.getOrderId(), JournalEntryType.SAGA_COMPENSATING);
+        journal.record(compensating.getOrderId(), JournalEntryType.STEP_REVERTED, 0);
+        this.close(journal);
+
+        // the second pass reads the segment the first one rewrote
+        for(int pass = 0; pass < 2; pass++){
+            Map<UUID, RecoveredSaga> sagas = this.recover();
+            assertEquals(2, sagas.size());
+            assertFalse(sagas.containsKey(completed.getOrderId()));
+
+            RecoveredSaga saga = sagas.get(running.getOrderId());
+            assertEquals(running, saga.getRequest());
+            assertEquals(steps(0), saga.getCompletedSteps());
+            assertEquals(steps(1), saga.getUnknownSteps());
+            assertFalse(saga.isCompensating());
+            assertTrue(saga.needsCompensation());
+
+            saga = sagas.get(compensating.getOrderId());
+            assertEquals(steps(), saga.getCompletedSteps());
+            assertEquals(steps(1), saga.getUnknownSteps());
+            assertTrue(saga.isCompensating());
+        }
+    }
+
+    @Test
+    void deletesSegmentsOfFinishedSagas() throws IOException {
+        OrchestratorRequestDTO early = this.request();
+        OrchestratorRequestDTO late = this.request();
+
+        // a 64KB segment holds 1024 records, so the finished sagas fill about ten of them
+        SagaJournal journal = this.open();
+        journal.sagaStarted(early);
+        for(int i = 0; i < 5000; i++){
+            OrchestratorRequestDTO finished = this.request();
+            journal.sagaStarted(finished);
+            journal.record(finished.getOrderId(), JournalEntryType.SAGA_COMPLETED);
+        }
+        this.close(journal);
+        assertTrue(this.segments() >= 10);
+
+        journal = this.open();
+        assertEquals(List.of(early), journal.getRecoveredSagas().stream().map(RecoveredSaga::getRequest).collect(Collectors.toList()));
+        journal.record(early.getOrderId(), JournalEntryType.SAGA_COMPLETED);
+        for(int i = 0; i < 5000; i++){
+            OrchestratorRequestDTO finished = this.request();
+            journal.sagaStarted(finished);
+            journal.record(finished.getOrderId(), JournalEntryType.SAGA_CANCELLED);
+        }
+        journal.sagaStarted(late);
+        this.close(journal);
+        assertTrue(this.segments() <= 2);
+
+        assertEquals(Map.of(late.getOrderId(), late), this.recover().values().stream()
+                .collect(Collectors.toMap(saga -> saga.getRequest().getOrderId(), RecoveredSaga::getRequest)));
+    }
+
+}
@@ -1,24 +1,51 @@
 package com.techelly.order.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.converter.MessageConverter;
 
+import com.techelly.codec.SagaBinaryMessageConverter;
 import com.techelly.dto.OrchestratorRequestDTO;
+import com.techelly.order.eventhandlers.OrderEventEmitter;
+import com.techelly.order.eventhandlers.OverflowPolicy;
+import com.techelly.order.eventhandlers.SpillFile;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
+
+import java.nio.file.Paths;
+import java.time.Duration;
 
 @Configuration
 public class OrderConfig {
 
     @Bean
-    public Sinks.Many<OrchestratorRequestDTO> sink(){
-        return Sinks.many().unicast().onBackpressureBuffer();
+    public OrderEventEmitter<OrchestratorRequestDTO> emitter(@Value("${order.events.capacity:1024}") int capacity,
+                                                             @Value("${order.events.overflow-policy:BLOCK}") OverflowPolicy overflowPolicy,
+                                                             @Value("${order.events.block-timeout:100ms}") Duration blockTimeout,
+                                                             @Value("${order.events.spill-file:order-events.spill}") String spillFile,
+                                                             ObjectMapper objectMapper,
+                                                             MeterRegistry registry){
+        return new OrderEventEmitter<>(
+                capacity,
+                overflowPolicy,
+                blockTimeout,
+                overflowPolicy == OverflowPolicy.SPILL ? new SpillFile<>(Paths.get(spillFile), objectMapper, OrchestratorRequestDTO.class) : null,
+                registry
+        );
+    }
+
+    @Bean
+    public Flux<OrchestratorRequestDTO> flux(OrderEventEmitter<OrchestratorRequestDTO> emitter){
+        return emitter.asFlux();
     }
 
+    // used by the bindings whose content-type is application/x-saga-binary
     @Bean
-    public Flux<OrchestratorRequestDTO> flux(Sinks.Many<OrchestratorRequestDTO> sink){
-        return sink.asFlux();
+    public MessageConverter sagaBinaryMessageConverter(){
+        return new SagaBinaryMessageConverter();
     }
 
 }
@@ -0,0 +1,129 @@
+package com.techelly.order.eventhandlers;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Bounded, multi-producer safe source of outbound events.
+ * Producers offer into a bounded queue from any thread. Events are handed downstream only against demand,
+ * by whichever thread wins the drain loop, so emission never fails for concurrent producers.
+ * A full queue is handled according to the overflow policy.
+ */
+public class OrderEventEmitter<T> {
+
+    private final BlockingQueue<Pending<T>> queue;
+    private final OverflowPolicy overflowPolicy;
+    private final Duration blockTimeout;
+    private final SpillFile<T> spillFile;
+    private final AtomicInteger wip = new AtomicInteger();
+    private final Flux<T> flux;
+    private final Timer latency;
+    private final Counter rejected;
+    private final Counter spilled;
+    private volatile FluxSink<T> downstream;
+
+    public OrderEventEmitter(int capacity, OverflowPolicy overflowPolicy, Duration blockTimeout,
+                             SpillFile<T> spillFile, MeterRegistry registry) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.overflowPolicy = overflowPolicy;
+        this.blockTimeout = blockTimeout;
+        this.spillFile = spillFile;
+        this.flux = Flux.create(sink -> {
+            this.downstream = sink;
+            sink.onRequest(n -> this.drain());
+            sink.onDispose(() -> this.downstream = null);
+        });
+        Gauge.builder("order.events.queue.depth", this, OrderEventEmitter::depth)
+                .description("events waiting to be published, including spilled ones")
+                .register(registry);
+        this.latency = Timer.builder("order.events.emission.latency")
+                .description("time from emit until the event is handed to the binder")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.rejected = Counter.builder("order.events.rejected").register(registry);
+        this.spilled = Counter.builder("order.events.spilled").register(registry);
+    }
+
+    public Flux<T> asFlux() {
+        return this.flux;
+    }
+
+    // true once the event is queued or spilled, false if it was rejected because of the overflow policy
+    public Mono<Boolean> emit(final T event) {
+        Pending<T> pending = new Pending<>(event, System.nanoTime());
+        if(this.spillFile != null){
+            // once we spill, later events go to the file as well so the order is kept
+            if(this.spillFile.size() > 0 || !this.queue.offer(pending)){
+                this.spillFile.append(event);
+                this.spilled.increment();
+            }
+            this.drain();
+            return Mono.just(true);
+        }
+        if(this.queue.offer(pending)){
+            this.drain();
+            return Mono.just(true);
+        }
+        if(this.overflowPolicy == OverflowPolicy.SHED){
+            this.rejected.increment();
+            return Mono.just(false);
+        }
+        return Mono.fromCallable(() -> this.queue.offer(pending, this.blockTimeout.toNanos(), TimeUnit.NANOSECONDS))
+                .subscribeOn(Schedulers.boundedElastic())
+                .doOnNext(accepted -> {
+                    if(accepted)
+                        this.drain();
+                    else
+                        this.rejected.increment();
+                });
+    }
+
+    public int depth() {
+        return this.queue.size() + (this.spillFile == null ? 0 : this.spillFile.size());
+    }
+
+    private void drain() {
+        if(this.wip.getAndIncrement() != 0)
+            return;
+        do {
+            FluxSink<T> sink = this.downstream;
+            while(sink != null && sink.requestedFromDownstream() > 0){
+                Pending<T> pending = this.queue.poll();
+                if(pending != null){
+                    this.latency.record(System.nanoTime() - pending.emittedAt, TimeUnit.NANOSECONDS);
+                    sink.next(pending.event);
+                    continue;
+                }
+                T event = this.spillFile == null ? null : this.spillFile.poll();
+                if(event == null)
+                    break;
+                sink.next(event);
+            }
+        } while(this.wip.decrementAndGet() != 0);
+    }
+
+    private static final class Pending<T> {
+
+        private final T event;
+        private final long emittedAt;
+
+        private Pending(T event, long emittedAt) {
+            this.event = event;
+            this.emittedAt = emittedAt;
+        }
+
+    }
+
+}
@@ -5,11 +5,15 @@ import com.techelly.dto.OrchestratorResponseDTO;
 import com.techelly.order.service.OrderEventUpdateService;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import reactor.core.publisher.DirectProcessor;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
@@ -22,6 +26,12 @@ public class OrderEventHandler {
     @Autowired
     private OrderEventUpdateService service;
 
+    @Value("${order.update.batch-size:256}")
+    private int batchSize;
+
+    @Value("${order.update.batch-wait:20ms}")
+    private Duration batchWait;
+
     @Bean
     public Supplier<Flux<OrchestratorRequestDTO>> supplier(){
         return () -> flux;
@@ -31,8 +41,23 @@ public class OrderEventHandler {
     public Consumer<Flux<OrchestratorResponseDTO>> consumer(){
         return f -> f
                 .doOnNext(c -> System.out.println("Consuming :: " + c))
-                .flatMap(responseDTO -> this.service.updateOrder(responseDTO))
+                .bufferTimeout(this.batchSize, this.batchWait)
+                .onBackpressureBuffer()
+                // one batch at a time, so updates for the same order are applied in arrival order
+                .concatMap(batch -> this.service.updateOrders(batch)
+                        .onErrorResume(ex -> this.updateOneByOne(batch)))
                 .subscribe();
     };
 
+    // a failed batch is applied update by update, so one bad update costs only itself and the stream keeps running
+    private Mono<Void> updateOneByOne(final List<OrchestratorResponseDTO> batch){
+        return Flux.fromIterable(batch)
+                .concatMap(dto -> this.service.updateOrder(dto)
+                        .onErrorResume(ex -> {
+                            System.out.println("Update failed :: " + dto + " " + ex);
+                            return Mono.empty();
+                        }))
+                .then();
+    }
+
 }
@@ -0,0 +1,13 @@
+package com.techelly.order.eventhandlers;
+
+// what OrderEventEmitter does with an event when its queue is full
+public enum OverflowPolicy {
+
+    // wait up to the block timeout for room, then reject
+    BLOCK,
+    // reject right away
+    SHED,
+    // append to a spill file which is drained once the queue has room again
+    SPILL;
+
+}
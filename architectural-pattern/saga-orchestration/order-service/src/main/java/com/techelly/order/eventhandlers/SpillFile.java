@@ -0,0 +1,150 @@
+package com.techelly.order.eventhandlers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/*
+ * FIFO of events stored as json lines. events left over from a previous run are drained first.
+ * An append returns once it was forced to disk. Appends which arrive during a force wait for the next one and share it.
+ * Lines are read through a buffer, readPosition is the offset of the first byte not handed out yet.
+ * A last line torn by a crash is cut off on open.
+ */
+public class SpillFile<T> {
+
+    private static final int READ_BUFFER = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ObjectMapper objectMapper;
+    private final Class<T> type;
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER).flip();
+    private final Object forceLock = new Object();
+    private long readPosition;
+    private int pending;
+    private long appended;
+    private long forced;
+
+    public SpillFile(Path path, ObjectMapper objectMapper, Class<T> type) {
+        this.objectMapper = objectMapper;
+        this.type = type;
+        try {
+            if(path.getParent() != null)
+                Files.createDirectories(path.getParent());
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long complete = 0;
+            byte[] line;
+            while((line = this.readLine()) != null){
+                complete = this.readPosition;
+                if(line.length > 0)
+                    this.pending++;
+            }
+            this.channel.truncate(complete);
+            this.rewind();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void append(T event) {
+        long sequence;
+        synchronized (this) {
+            try {
+                byte[] json = this.objectMapper.writeValueAsBytes(event);
+                ByteBuffer line = ByteBuffer.wrap(Arrays.copyOf(json, json.length + 1));
+                line.put(json.length, (byte) '\n');
+                long position = this.channel.size();
+                while(line.hasRemaining())
+                    position += this.channel.write(line, position);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.pending++;
+            sequence = ++this.appended;
+        }
+        this.force(sequence);
+    }
+
+    // null once the file is drained. the file is truncated at that point
+    public synchronized T poll() {
+        if(this.pending == 0)
+            return null;
+        try {
+            byte[] line = this.readLine();
+            while(line != null && line.length == 0)
+                line = this.readLine();
+            this.pending--;
+            if(this.pending == 0){
+                this.channel.truncate(0);
+                this.rewind();
+            }
+            return line == null ? null : this.objectMapper.readValue(line, this.type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public synchronized int size() {
+        return this.pending;
+    }
+
+    // one force covers every append made before it started
+    private void force(final long sequence) {
+        synchronized (this.forceLock) {
+            if(this.forced >= sequence)
+                return;
+            long upTo;
+            synchronized (this) {
+                upTo = this.appended;
+            }
+            try {
+                this.channel.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            this.forced = upTo;
+        }
+    }
+
+    // the line at readPosition without its newline, null if there is no complete line left
+    private byte[] readLine() throws IOException {
+        long start = this.readPosition;
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for(;;){
+            if(!this.readBuffer.hasRemaining()){
+                this.readBuffer.clear();
+                int read = this.channel.read(this.readBuffer, this.readPosition);
+                this.readBuffer.flip();
+                if(read <= 0){
+                    // the bytes of an incomplete line are read again next time
+                    this.readPosition = start;
+                    return null;
+                }
+            }
+            int from = this.readBuffer.position();
+            int end = from;
+            while(end < this.readBuffer.limit() && this.readBuffer.get(end) != '\n')
+                end++;
+            line.write(this.readBuffer.array(), this.readBuffer.arrayOffset() + from, end - from);
+            boolean complete = end < this.readBuffer.limit();
+            int consumed = end - from + (complete ? 1 : 0);
+            this.readBuffer.position(from + consumed);
+            this.readPosition += consumed;
+            if(complete)
+                return line.toByteArray();
+        }
+    }
+
+    private void rewind() {
+        this.readPosition = 0;
+        this.readBuffer.position(this.readBuffer.limit());
+    }
+
+}
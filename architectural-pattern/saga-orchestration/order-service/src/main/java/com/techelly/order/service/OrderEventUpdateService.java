@@ -1,23 +1,50 @@
 package com.techelly.order.service;
 
 import com.techelly.dto.OrchestratorResponseDTO;
-import com.techelly.order.repository.PurchaseOrderRepository;
+import com.techelly.enums.OrderStatus;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.r2dbc.core.DatabaseClient;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Mono;
 
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
 @Service
 public class OrderEventUpdateService {
 
     @Autowired
-    private PurchaseOrderRepository repository;
+    private DatabaseClient databaseClient;
 
     public Mono<Void> updateOrder(final OrchestratorResponseDTO responseDTO){
-        return this.repository.findById(responseDTO.getOrderId())
-                .doOnNext(p -> p.setStatus(responseDTO.getStatus()))
-                .flatMap(this.repository::save)
-                .then();
+        return this.updateOrders(List.of(responseDTO));
+    }
+
+    // one UPDATE ... SET status = CASE ... for the whole batch. for repeated orders the last response wins
+    public Mono<Void> updateOrders(final List<OrchestratorResponseDTO> responseDTOs){
+        Map<UUID, OrderStatus> statuses = new LinkedHashMap<>();
+        responseDTOs.forEach(dto -> statuses.put(dto.getOrderId(), dto.getStatus()));
+        if(statuses.isEmpty())
+            return Mono.empty();
+        StringBuilder caseSql = new StringBuilder("UPDATE purchase_order SET status = CASE id");
+        StringBuilder inSql = new StringBuilder(" END WHERE id IN (");
+        int i = 0;
+        for(UUID ignored : statuses.keySet()){
+            caseSql.append(" WHEN :id").append(i).append(" THEN :status").append(i);
+            inSql.append(i == 0 ? "" : ", ").append(":id").append(i);
+            i++;
+        }
+        DatabaseClient.GenericExecuteSpec spec = this.databaseClient.sql(caseSql.append(inSql).append(")").toString());
+        i = 0;
+        for(Map.Entry<UUID, OrderStatus> entry : statuses.entrySet()){
+            spec = spec.bind("id" + i, entry.getKey())
+                    .bind("status" + i, entry.getValue().name());
+            i++;
+        }
+        return spec.then();
     }
 
 }
@@ -5,13 +5,15 @@ import com.techelly.dto.OrderRequestDTO;
 import com.techelly.dto.OrderResponseDTO;
 import com.techelly.enums.OrderStatus;
 import com.techelly.order.entity.PurchaseOrder;
+import com.techelly.order.eventhandlers.OrderEventEmitter;
 import com.techelly.order.repository.PurchaseOrderRepository;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-import reactor.core.publisher.Sinks;
 
 import java.util.Map;
 
@@ -29,12 +31,17 @@ public class OrderService {
     private PurchaseOrderRepository purchaseOrderRepository;
 
     @Autowired
-    private Sinks.Many<OrchestratorRequestDTO> sink;
+    private OrderEventEmitter<OrchestratorRequestDTO> emitter;
 
     public Mono<PurchaseOrder> createOrder(OrderRequestDTO orderRequestDTO){
         return this.purchaseOrderRepository.save(this.dtoToEntity(orderRequestDTO))
                 .doOnNext(e -> orderRequestDTO.setOrderId(e.getId()))
-                .doOnNext(e -> this.emitEvent(orderRequestDTO));
+                .flatMap(e -> this.emitEvent(orderRequestDTO)
+                        .flatMap(accepted -> accepted
+                                ? Mono.just(e)
+                                // nothing will pick the order up, so do not keep it around
+                                : this.purchaseOrderRepository.delete(e)
+                                        .then(Mono.error(new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "order events are backed up, try again later")))));
     }
 
     public Flux<OrderResponseDTO> getAll() {
@@ -42,8 +49,8 @@ public class OrderService {
                 .map(this::entityToDto);
     }
 
-    private void emitEvent(OrderRequestDTO orderRequestDTO){
-        this.sink.tryEmitNext(this.getOrchestratorRequestDTO(orderRequestDTO));
+    private Mono<Boolean> emitEvent(OrderRequestDTO orderRequestDTO){
+        return this.emitter.emit(this.getOrchestratorRequestDTO(orderRequestDTO));
     }
 
     private PurchaseOrder dtoToEntity(final OrderRequestDTO dto){
@@ -0,0 +1,66 @@
+package com.techelly.order.eventhandlers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.techelly.dto.OrchestratorRequestDTO;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class SpillFileTests {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @TempDir
+    Path directory;
+
+    private static OrchestratorRequestDTO request(int userId) {
+        OrchestratorRequestDTO request = new OrchestratorRequestDTO();
+        request.setUserId(userId);
+        request.setProductId(1);
+        request.setOrderId(UUID.randomUUID());
+        request.setAmount(100.0);
+        return request;
+    }
+
+    @Test
+    void pollsInAppendOrderAcrossBufferRefills() {
+        SpillFile<OrchestratorRequestDTO> spill = new SpillFile<>(this.directory.resolve("spill"), this.objectMapper, OrchestratorRequestDTO.class);
+        int next = 0;
+        for(int i = 0; i < 3000; i++){
+            spill.append(request(i));
+            if(i % 3 == 0)
+                assertEquals(next++, spill.poll().getUserId());
+        }
+        while(spill.size() > 0)
+            assertEquals(next++, spill.poll().getUserId());
+        assertEquals(3000, next);
+        assertNull(spill.poll());
+    }
+
+    @Test
+    void drainsLeftoversAndCutsATornLastLine() throws IOException {
+        Path path = this.directory.resolve("spill");
+        SpillFile<OrchestratorRequestDTO> spill = new SpillFile<>(path, this.objectMapper, OrchestratorRequestDTO.class);
+        spill.append(request(1));
+        spill.append(request(2));
+        Files.write(path, "{\"userId\":3,\"prod".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+        SpillFile<OrchestratorRequestDTO> reopened = new SpillFile<>(path, this.objectMapper, OrchestratorRequestDTO.class);
+        assertEquals(2, reopened.size());
+        reopened.append(request(4));
+        assertEquals(1, reopened.poll().getUserId());
+        assertEquals(2, reopened.poll().getUserId());
+        assertEquals(4, reopened.poll().getUserId());
+        assertNull(reopened.poll());
+    }
+
+}
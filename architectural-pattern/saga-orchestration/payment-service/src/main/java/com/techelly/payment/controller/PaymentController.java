@@ -9,7 +9,13 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.util.List;
+import java.util.stream.Collectors;
+
+// the ledger writes its transaction log and may wait for the disk, so it is kept off the event loop
 @RestController
 @RequestMapping("payment")
 public class PaymentController {
@@ -18,13 +24,24 @@ public class PaymentController {
     private PaymentService service;
 
     @PostMapping("/debit")
-    public PaymentResponseDTO debit(@RequestBody PaymentRequestDTO requestDTO){
-        return this.service.debit(requestDTO);
+    public Mono<PaymentResponseDTO> debit(@RequestBody PaymentRequestDTO requestDTO){
+        return Mono.fromCallable(() -> this.service.debit(requestDTO))
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @PostMapping("/debit/batch")
+    public Mono<List<PaymentResponseDTO>> debitBatch(@RequestBody List<PaymentRequestDTO> requestDTOs){
+        return Mono.fromCallable(() -> requestDTOs.stream()
+                        .map(this.service::debit)
+                        .collect(Collectors.toList()))
+                .subscribeOn(Schedulers.boundedElastic());
     }
 
     @PostMapping("/credit")
-    public void credit(@RequestBody PaymentRequestDTO requestDTO){
-        this.service.credit(requestDTO);
+    public Mono<Void> credit(@RequestBody PaymentRequestDTO requestDTO){
+        return Mono.fromRunnable(() -> this.service.credit(requestDTO))
+                .subscribeOn(Schedulers.boundedElastic())
+                .then();
     }
 
 }
@@ -0,0 +1,215 @@
+package com.techelly.payment.ledger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * User balances in whole cents, one slot per user.
+ * Debits are a CAS loop which never lets a balance drop below zero, so concurrent debits of the same user can not
+ * overdraw, and users never wait for each other. Each slot sits on a cache line of its own, so hot users do not
+ * slow down their neighbours either.
+ * Every change is appended to a TransactionLog, which is replayed when the ledger is opened.
+ * A debit or credit made for a request carries its reference, and so does a declined debit. Replay hands the
+ * references younger than the retention to a listener, so the requests already answered are known after a restart.
+ */
+public final class BalanceLedger implements Closeable {
+
+    private static final VarHandle SLOTS = MethodHandles.arrayElementVarHandle(long[].class);
+    // 8 longs = 64 bytes, one cache line per user
+    private static final int PADDING = 8;
+
+    private final long[] balances;
+    private final Map<Integer, Integer> slots = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSlot = new AtomicInteger();
+    private final TransactionLog log;
+
+    public enum Change {
+        DEBITED,
+        DECLINED,
+        CREDITED
+    }
+
+    public interface ReferenceListener {
+
+        void replayed(UUID reference, int userId, Change change, long cents, long timestamp);
+
+    }
+
+    private BalanceLedger(int maxUsers, TransactionLog log) {
+        if(maxUsers < 1)
+            throw new IllegalArgumentException("maxUsers must be positive : " + maxUsers);
+        this.balances = new long[maxUsers * PADDING];
+        this.log = log;
+    }
+
+    // a ledger without a transaction log, nothing survives a restart
+    public static BalanceLedger inMemory(int maxUsers) {
+        return new BalanceLedger(maxUsers, null);
+    }
+
+    public static BalanceLedger logged(int maxUsers, Path directory, int stripes, boolean sync) {
+        return logged(maxUsers, directory, stripes, sync, Duration.ZERO, (reference, userId, change, cents, timestamp) -> {});
+    }
+
+    public static BalanceLedger logged(int maxUsers, Path directory, int stripes, boolean sync,
+                                       Duration referenceRetention, ReferenceListener listener) {
+        BalanceLedger ledger = new BalanceLedger(maxUsers, new TransactionLog(directory, stripes, sync, referenceRetention.toMillis()));
+        long retainSince = System.currentTimeMillis() - referenceRetention.toMillis();
+        ledger.log.replay((userId, type, cents, timestamp, reference) -> {
+            ledger.replay(userId, type, cents);
+            if(reference != null && timestamp >= retainSince)
+                listener.replayed(reference, userId, change(type & ~TransactionLog.REFERENCE_ONLY), cents, timestamp);
+        });
+        ledger.log.open(ledger.snapshot());
+        return ledger;
+    }
+
+    // opens an account with the given balance. false if the user already has one
+    public boolean open(final int userId, final long cents) {
+        if(cents < 0)
+            throw new IllegalArgumentException("opening balance must not be negative : " + cents);
+        boolean[] created = new boolean[1];
+        this.slots.computeIfAbsent(userId, k -> {
+            int slot = this.claimSlot();
+            SLOTS.setVolatile(this.balances, slot * PADDING, cents);
+            // logged before the account is visible, so no change of it can be logged ahead of the opening
+            this.append(userId, TransactionLog.OPEN, cents, null);
+            created[0] = true;
+            return slot;
+        });
+        return created[0];
+    }
+
+    public boolean debit(final int userId, final long cents) {
+        return this.debit(userId, cents, null);
+    }
+
+    // false if the user is unknown or the balance is too low. the balance is left untouched then, the decline is logged
+    public boolean debit(final int userId, final long cents, final UUID reference) {
+        this.checkAmount(cents);
+        Integer slot = this.slots.get(userId);
+        if(slot == null){
+            this.decline(userId, cents, reference);
+            return false;
+        }
+        int index = slot * PADDING;
+        long balance;
+        do {
+            balance = (long) SLOTS.getVolatile(this.balances, index);
+            if(balance < cents){
+                this.decline(userId, cents, reference);
+                return false;
+            }
+        } while(!SLOTS.compareAndSet(this.balances, index, balance, balance - cents));
+        this.append(userId, TransactionLog.DEBIT, cents, reference);
+        return true;
+    }
+
+    // records a debit as declined without trying it, so it stays declined after a restart. only logged with a reference
+    public void decline(final int userId, final long cents, final UUID reference) {
+        if(reference != null)
+            this.append(userId, TransactionLog.DECLINE, cents, reference);
+    }
+
+    public boolean credit(final int userId, final long cents) {
+        return this.credit(userId, cents, null);
+    }
+
+    // false if the user is unknown
+    public boolean credit(final int userId, final long cents, final UUID reference) {
+        this.checkAmount(cents);
+        Integer slot = this.slots.get(userId);
+        if(slot == null)
+            return false;
+        SLOTS.getAndAdd(this.balances, slot * PADDING, cents);
+        this.append(userId, TransactionLog.CREDIT, cents, reference);
+        return true;
+    }
+
+    public long balance(final int userId) {
+        Integer slot = this.slots.get(userId);
+        return slot == null ? 0 : (long) SLOTS.getVolatile(this.balances, slot * PADDING);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if(this.log != null)
+            this.log.close();
+    }
+
+    // a record compaction kept for its reference only changes nothing, neither does a declined debit
+    private void replay(final int userId, final int type, final long cents) {
+        if((type & TransactionLog.REFERENCE_ONLY) != 0)
+            return;
+        switch(type){
+            case TransactionLog.OPEN:
+                int slot = this.slots.computeIfAbsent(userId, k -> this.claimSlot());
+                SLOTS.setVolatile(this.balances, slot * PADDING, cents);
+                break;
+            case TransactionLog.DEBIT:
+                this.replayDelta(userId, -cents);
+                break;
+            case TransactionLog.CREDIT:
+                this.replayDelta(userId, cents);
+                break;
+            case TransactionLog.DECLINE:
+                break;
+            default:
+                throw new IllegalStateException("unknown transaction type " + type + " for user " + userId);
+        }
+    }
+
+    private void replayDelta(final int userId, final long cents) {
+        Integer slot = this.slots.get(userId);
+        if(slot == null)
+            throw new IllegalStateException("transaction for user " + userId + " before the account was opened");
+        SLOTS.getAndAdd(this.balances, slot * PADDING, cents);
+    }
+
+    // the balances after replay, to compact the log with
+    private Map<Integer, Long> snapshot() {
+        Map<Integer, Long> snapshot = new HashMap<>();
+        this.slots.forEach((userId, slot) -> snapshot.put(userId, (long) SLOTS.getVolatile(this.balances, slot * PADDING)));
+        return snapshot;
+    }
+
+    private int claimSlot() {
+        int slot = this.nextSlot.getAndIncrement();
+        if(slot * PADDING >= this.balances.length)
+            throw new IllegalStateException("ledger is full, it holds " + this.balances.length / PADDING + " users");
+        return slot;
+    }
+
+    private void checkAmount(final long cents) {
+        if(cents < 0)
+            throw new IllegalArgumentException("amount must not be negative : " + cents);
+    }
+
+    private static Change change(final int type) {
+        switch(type){
+            case TransactionLog.DEBIT:
+                return Change.DEBITED;
+            case TransactionLog.DECLINE:
+                return Change.DECLINED;
+            case TransactionLog.CREDIT:
+                return Change.CREDITED;
+            default:
+                throw new IllegalStateException("transaction type " + type + " carries no reference");
+        }
+    }
+
+    private void append(final int userId, final int type, final long cents, final UUID reference) {
+        if(this.log != null)
+            this.log.append(userId, type, cents, reference);
+    }
+
+}
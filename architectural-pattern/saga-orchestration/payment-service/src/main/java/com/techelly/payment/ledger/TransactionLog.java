@@ -0,0 +1,191 @@
+package com.techelly.payment.ledger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/*
+ * Append-only log of ledger changes, split into stripes by userId so appends for different users
+ * do not queue behind one lock. A user always lands in the same stripe, so its changes stay in order.
+ * Records are 40 bytes : cents (long), userId (int), type (int), timestamp (long), reference (two longs).
+ * A change made for a request carries its reference, the orderId. Compaction keeps the references younger than the
+ * retention as records flagged REFERENCE_ONLY, which tell a replay what was done for the request but change no balance.
+ * Without sync the records are handed to the os on every append, which survives a crash of the process
+ * but not of the machine.
+ */
+final class TransactionLog implements Closeable {
+
+    static final int OPEN = 1;
+    static final int DEBIT = 2;
+    static final int CREDIT = 3;
+    // a debit which was declined, the balance stayed as it was
+    static final int DECLINE = 4;
+    static final int REFERENCE_ONLY = 0x100;
+
+    private static final int RECORD_SIZE = 40;
+
+    private final Path directory;
+    private final boolean sync;
+    private final long referenceRetentionMillis;
+    private final Stripe[] stripes;
+    // the referenced records found by replay() which open() keeps
+    private final List<Record> retained = new ArrayList<>();
+
+    TransactionLog(Path directory, int stripes, boolean sync, long referenceRetentionMillis) {
+        if(Integer.bitCount(stripes) != 1)
+            throw new IllegalArgumentException("stripes must be a power of two : " + stripes);
+        this.directory = directory;
+        this.sync = sync;
+        this.referenceRetentionMillis = referenceRetentionMillis;
+        this.stripes = new Stripe[stripes];
+    }
+
+    interface Replay {
+
+        // reference is null for a change which was not made for a request
+        void apply(int userId, int type, long cents, long timestamp, UUID reference);
+
+    }
+
+    void replay(final Replay replay) {
+        try {
+            for(int i = 0; i < this.stripes.length; i++)
+                this.replay(this.path(i), replay);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // compacts every stripe into a single OPEN record per user and the retained references, then opens it for appending
+    void open(final Map<Integer, Long> balances) {
+        long now = System.currentTimeMillis();
+        try {
+            Files.createDirectories(this.directory);
+            for(int i = 0; i < this.stripes.length; i++){
+                Path compacted = this.directory.resolve("stripe-" + i + ".log.tmp");
+                try(FileChannel channel = FileChannel.open(compacted, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)){
+                    ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+                    for(Map.Entry<Integer, Long> balance : balances.entrySet()){
+                        if(this.stripe(balance.getKey()) == i)
+                            write(channel, record, balance.getKey(), OPEN, balance.getValue(), now, 0, 0);
+                    }
+                    for(Record kept : this.retained){
+                        if(this.stripe(kept.userId) == i)
+                            write(channel, record, kept.userId, kept.type | REFERENCE_ONLY, kept.cents, kept.timestamp, kept.msb, kept.lsb);
+                    }
+                    channel.force(true);
+                }
+                Files.move(compacted, this.path(i), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                this.stripes[i] = new Stripe(FileChannel.open(this.path(i), StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+            }
+            this.retained.clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void append(final int userId, final int type, final long cents, final UUID reference) {
+        long timestamp = System.currentTimeMillis();
+        long msb = reference == null ? 0 : reference.getMostSignificantBits();
+        long lsb = reference == null ? 0 : reference.getLeastSignificantBits();
+        Stripe stripe = this.stripes[this.stripe(userId)];
+        stripe.lock.lock();
+        try {
+            write(stripe.channel, stripe.record, userId, type, cents, timestamp, msb, lsb);
+            if(this.sync)
+                stripe.channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for(Stripe stripe : this.stripes){
+            if(stripe != null)
+                stripe.channel.close();
+        }
+    }
+
+    private void replay(final Path path, final Replay replay) throws IOException {
+        if(!Files.exists(path))
+            return;
+        ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(path));
+        long retainSince = System.currentTimeMillis() - this.referenceRetentionMillis;
+        // a torn record at the end is an append that never completed, so it is dropped
+        while(bytes.remaining() >= RECORD_SIZE){
+            long cents = bytes.getLong();
+            int userId = bytes.getInt();
+            int type = bytes.getInt();
+            long timestamp = bytes.getLong();
+            long msb = bytes.getLong();
+            long lsb = bytes.getLong();
+            boolean referenced = msb != 0 || lsb != 0;
+            replay.apply(userId, type, cents, timestamp, referenced ? new UUID(msb, lsb) : null);
+            if(referenced && timestamp >= retainSince)
+                this.retained.add(new Record(userId, type & ~REFERENCE_ONLY, cents, timestamp, msb, lsb));
+        }
+    }
+
+    private static void write(final FileChannel channel, final ByteBuffer record, final int userId, final int type, final long cents,
+                              final long timestamp, final long msb, final long lsb) throws IOException {
+        record.clear();
+        record.putLong(cents).putInt(userId).putInt(type).putLong(timestamp).putLong(msb).putLong(lsb).flip();
+        while(record.hasRemaining())
+            channel.write(record);
+    }
+
+    private int stripe(final int userId) {
+        return (userId ^ (userId >>> 16)) & (this.stripes.length - 1);
+    }
+
+    private Path path(final int stripe) {
+        return this.directory.resolve("stripe-" + stripe + ".log");
+    }
+
+    private static final class Record {
+
+        private final int userId;
+        private final int type;
+        private final long cents;
+        private final long timestamp;
+        private final long msb;
+        private final long lsb;
+
+        private Record(int userId, int type, long cents, long timestamp, long msb, long lsb) {
+            this.userId = userId;
+            this.type = type;
+            this.cents = cents;
+            this.timestamp = timestamp;
+            this.msb = msb;
+            this.lsb = lsb;
+        }
+
+    }
+
+    private static final class Stripe {
+
+        private final FileChannel channel;
+        private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private Stripe(FileChannel channel) {
+            this.channel = channel;
+        }
+
+    }
+
+}
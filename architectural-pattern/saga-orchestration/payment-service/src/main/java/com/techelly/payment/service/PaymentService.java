@@ -3,42 +3,131 @@ package com.techelly.payment.service;
 import com.techelly.dto.PaymentRequestDTO;
 import com.techelly.dto.PaymentResponseDTO;
 import com.techelly.enums.PaymentStatus;
+import com.techelly.idempotency.IdempotencyCache;
+import com.techelly.payment.ledger.BalanceLedger;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
-import java.util.HashMap;
-import java.util.Map;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.UUID;
 
 @Service
 public class PaymentService {
 
-    private Map<Integer, Double> userBalanceMap;
+    @Value("${idempotency.max-entries:100000}")
+    private int idempotencyMaxEntries;
+
+    @Value("${idempotency.ttl:10m}")
+    private Duration idempotencyTtl;
+
+    @Value("${payment.ledger.directory:payment-ledger}")
+    private String ledgerDirectory;
+
+    @Value("${payment.ledger.max-users:1024}")
+    private int ledgerMaxUsers;
+
+    @Value("${payment.ledger.stripes:16}")
+    private int ledgerStripes;
+
+    @Value("${payment.ledger.sync:false}")
+    private boolean ledgerSync;
+
+    private BalanceLedger ledger;
+    private IdempotencyCache<PaymentResponseDTO> idempotencyCache;
 
     @PostConstruct
     private void init(){
-        this.userBalanceMap = new HashMap<>();
-        this.userBalanceMap.put(1, 1000d);
-        this.userBalanceMap.put(2, 1000d);
-        this.userBalanceMap.put(3, 1000d);
+        this.idempotencyCache = new IdempotencyCache<>(this.idempotencyMaxEntries, this.idempotencyTtl);
+        // an empty directory keeps the balances in memory only. otherwise the log hands back the requests answered
+        // within the ttl, so a debit or credit retried across a restart is not applied twice
+        this.ledger = this.ledgerDirectory.isEmpty()
+                ? BalanceLedger.inMemory(this.ledgerMaxUsers)
+                : BalanceLedger.logged(this.ledgerMaxUsers, Paths.get(this.ledgerDirectory), this.ledgerStripes, this.ledgerSync,
+                        this.idempotencyTtl, this::restore);
+        // 1000.00 each. only opened on the first start, after that the balances come from the transaction log
+        this.ledger.open(1, 100_000);
+        this.ledger.open(2, 100_000);
+        this.ledger.open(3, 100_000);
+    }
+
+    @PreDestroy
+    private void close() throws IOException {
+        this.ledger.close();
     }
 
     public PaymentResponseDTO debit(final PaymentRequestDTO requestDTO){
-        double balance = this.userBalanceMap.getOrDefault(requestDTO.getUserId(), 0d);
+        return this.idempotencyCache.execute(requestDTO.getOrderId(), "debit", () -> this.applyDebit(requestDTO));
+    }
+
+    /*
+     * A saga which ran out of time compensates debits whose outcome it never saw, and the credit may even arrive
+     * before the debit. A debit we have not seen yet is therefore fenced with a rejection, so it is never applied
+     * later, and only an approved debit is credited back.
+     */
+    public void credit(final PaymentRequestDTO requestDTO){
+        PaymentResponseDTO debit = requestDTO.getOrderId() == null ? null
+                : this.idempotencyCache.execute(requestDTO.getOrderId(), "debit", () -> this.fence(requestDTO));
+        this.idempotencyCache.execute(requestDTO.getOrderId(), "credit", () -> {
+            if(debit == null || debit.getStatus() == PaymentStatus.PAYMENT_APPROVED)
+                this.applyCredit(requestDTO);
+            return null;
+        });
+    }
+
+    private PaymentResponseDTO applyDebit(final PaymentRequestDTO requestDTO){
+        PaymentResponseDTO responseDTO = this.rejected(requestDTO);
+        if(requestDTO.getUserId() != null && requestDTO.getAmount() != null && requestDTO.getAmount() >= 0
+                && this.ledger.debit(requestDTO.getUserId(), toCents(requestDTO.getAmount()), requestDTO.getOrderId())){
+            responseDTO.setStatus(PaymentStatus.PAYMENT_APPROVED);
+        }
+        return responseDTO;
+    }
+
+    // the fence is logged like a declined debit, so it still holds after a restart
+    private PaymentResponseDTO fence(final PaymentRequestDTO requestDTO){
+        this.ledger.decline(requestDTO.getUserId() == null ? 0 : requestDTO.getUserId(),
+                requestDTO.getAmount() == null || requestDTO.getAmount() < 0 ? 0 : toCents(requestDTO.getAmount()),
+                requestDTO.getOrderId());
+        return this.rejected(requestDTO);
+    }
+
+    private PaymentResponseDTO rejected(final PaymentRequestDTO requestDTO){
         PaymentResponseDTO responseDTO = new PaymentResponseDTO();
         responseDTO.setAmount(requestDTO.getAmount());
         responseDTO.setUserId(requestDTO.getUserId());
         responseDTO.setOrderId(requestDTO.getOrderId());
         responseDTO.setStatus(PaymentStatus.PAYMENT_REJECTED);
-        if(balance >= requestDTO.getAmount()){
-            responseDTO.setStatus(PaymentStatus.PAYMENT_APPROVED);
-            this.userBalanceMap.put(requestDTO.getUserId(), balance - requestDTO.getAmount());
-        }
         return responseDTO;
     }
 
-    public void credit(final PaymentRequestDTO requestDTO){
-        this.userBalanceMap.computeIfPresent(requestDTO.getUserId(), (k, v) -> v + requestDTO.getAmount());
+    private void applyCredit(final PaymentRequestDTO requestDTO){
+        if(requestDTO.getUserId() != null && requestDTO.getAmount() != null && requestDTO.getAmount() >= 0)
+            this.ledger.credit(requestDTO.getUserId(), toCents(requestDTO.getAmount()), requestDTO.getOrderId());
+    }
+
+    private void restore(final UUID orderId, final int userId, final BalanceLedger.Change change, final long cents, final long timestamp){
+        Duration age = Duration.ofMillis(System.currentTimeMillis() - timestamp);
+        if(change == BalanceLedger.Change.CREDITED){
+            this.idempotencyCache.restore(orderId, "credit", null, age);
+            return;
+        }
+        PaymentRequestDTO requestDTO = new PaymentRequestDTO();
+        requestDTO.setOrderId(orderId);
+        requestDTO.setUserId(userId);
+        requestDTO.setAmount(cents / 100d);
+        PaymentResponseDTO responseDTO = this.rejected(requestDTO);
+        if(change == BalanceLedger.Change.DEBITED)
+            responseDTO.setStatus(PaymentStatus.PAYMENT_APPROVED);
+        this.idempotencyCache.restore(orderId, "debit", responseDTO, age);
+    }
+
+    private static long toCents(final double amount){
+        return Math.round(amount * 100);
     }
 
 }
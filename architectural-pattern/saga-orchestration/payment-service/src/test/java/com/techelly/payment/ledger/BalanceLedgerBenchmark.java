@@ -0,0 +1,121 @@
+package com.techelly.payment.ledger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Debit / credit pairs from all threads against a few hot users, ledger against the former
+ * map of Double balances, made safe with a single lock.
+ * run main() on the test classpath, or org.openjdk.jmh.Main BalanceLedgerBenchmark for custom options
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+public class BalanceLedgerBenchmark {
+
+    private static final int USERS = 1024;
+
+    @Param({"1", "64"})
+    private int hotUsers;
+
+    private BalanceLedger inMemory;
+    private BalanceLedger logged;
+    private Path logDirectory;
+    private Map<Integer, Double> map;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.logDirectory = Files.createTempDirectory("ledger-benchmark");
+        this.inMemory = BalanceLedger.inMemory(USERS);
+        this.logged = BalanceLedger.logged(USERS, this.logDirectory, 16, false);
+        this.map = new HashMap<>();
+        for(int userId = 0; userId < USERS; userId++){
+            this.inMemory.open(userId, 100_000);
+            this.logged.open(userId, 100_000);
+            this.map.put(userId, 1000d);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.logged.close();
+        FileSystemUtils.deleteRecursively(this.logDirectory);
+    }
+
+    @Benchmark
+    public boolean ledgerInMemory() {
+        int userId = this.nextUser();
+        boolean debited = this.inMemory.debit(userId, 1_000);
+        if(debited)
+            this.inMemory.credit(userId, 1_000);
+        return debited;
+    }
+
+    @Benchmark
+    public boolean ledgerLogged() {
+        int userId = this.nextUser();
+        boolean debited = this.logged.debit(userId, 1_000);
+        if(debited)
+            this.logged.credit(userId, 1_000);
+        return debited;
+    }
+
+    @Benchmark
+    public boolean lockedMap() {
+        int userId = this.nextUser();
+        boolean debited = false;
+        synchronized (this.map){
+            double balance = this.map.getOrDefault(userId, 0d);
+            if(balance >= 10d){
+                this.map.put(userId, balance - 10d);
+                debited = true;
+            }
+        }
+        if(debited){
+            synchronized (this.map){
+                this.map.computeIfPresent(userId, (k, v) -> v + 10d);
+            }
+        }
+        return debited;
+    }
+
+    private int nextUser() {
+        return ThreadLocalRandom.current().nextInt(this.hotUsers);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(BalanceLedgerBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+
+}
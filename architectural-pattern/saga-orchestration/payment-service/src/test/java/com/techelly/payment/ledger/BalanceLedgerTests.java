@@ -0,0 +1,123 @@
+package com.techelly.payment.ledger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BalanceLedgerTests {
+
+    private static final int USERS = 4;
+    private static final long OPENING = 10_000;
+
+    @TempDir
+    Path directory;
+
+    private BalanceLedger reopen(Map<UUID, BalanceLedger.Change> references) {
+        references.clear();
+        return BalanceLedger.logged(16, this.directory, 4, false, Duration.ofMinutes(10),
+                (reference, userId, change, cents, timestamp) -> references.put(reference, change));
+    }
+
+    @Test
+    void replaysReferencesAcrossCompactions() throws IOException {
+        Map<UUID, BalanceLedger.Change> references = new HashMap<>();
+        UUID debited = UUID.randomUUID();
+        UUID declined = UUID.randomUUID();
+        UUID fenced = UUID.randomUUID();
+
+        BalanceLedger ledger = this.reopen(references);
+        ledger.open(1, 1_000);
+        assertTrue(ledger.debit(1, 600, debited));
+        assertFalse(ledger.debit(1, 600, declined));
+        ledger.decline(1, 100, fenced);
+        assertTrue(ledger.credit(1, 600, debited));
+        ledger.debit(1, 100);
+        ledger.close();
+
+        // the second open reads the log the first one compacted
+        for(int open = 0; open < 2; open++){
+            ledger = this.reopen(references);
+            assertEquals(900, ledger.balance(1));
+            assertEquals(Map.of(debited, BalanceLedger.Change.CREDITED, declined, BalanceLedger.Change.DECLINED,
+                    fenced, BalanceLedger.Change.DECLINED), references);
+            ledger.close();
+        }
+    }
+
+    @Test
+    void dropsReferencesOlderThanTheRetention() throws IOException, InterruptedException {
+        BalanceLedger ledger = BalanceLedger.logged(16, this.directory, 4, false);
+        ledger.open(1, 1_000);
+        assertTrue(ledger.debit(1, 100, UUID.randomUUID()));
+        ledger.close();
+        Thread.sleep(20);
+
+        Map<UUID, BalanceLedger.Change> references = new HashMap<>();
+        ledger = BalanceLedger.logged(16, this.directory, 4, false, Duration.ofMillis(10),
+                (reference, userId, change, cents, timestamp) -> references.put(reference, change));
+        ledger.close();
+        assertTrue(references.isEmpty());
+        assertEquals(900, this.reopen(references).balance(1));
+        assertTrue(references.isEmpty());
+    }
+
+    @Test
+    void keepsConcurrentChangesOfTheSameUsers() throws Exception {
+        BalanceLedger ledger = BalanceLedger.logged(16, this.directory, 2, false);
+        for(int userId = 0; userId < USERS; userId++)
+            ledger.open(userId, OPENING);
+        AtomicLongArray expected = new AtomicLongArray(USERS);
+        for(int userId = 0; userId < USERS; userId++)
+            expected.set(userId, OPENING);
+
+        // the balances are small enough for debits to be declined, so the floor at zero is hit as well
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> workers = new ArrayList<>();
+        for(int worker = 0; worker < 8; worker++){
+            workers.add(executor.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for(int i = 0; i < 20_000; i++){
+                    int userId = random.nextInt(USERS);
+                    long cents = 1 + random.nextInt(500);
+                    if(random.nextBoolean()){
+                        if(ledger.debit(userId, cents))
+                            expected.addAndGet(userId, -cents);
+                    } else if(ledger.credit(userId, cents / 2)){
+                        expected.addAndGet(userId, cents / 2);
+                    }
+                    assertTrue(ledger.balance(userId) >= 0);
+                }
+            }));
+        }
+        executor.shutdown();
+        for(Future<?> worker : workers)
+            worker.get(30, TimeUnit.SECONDS);
+        ledger.close();
+
+        for(int userId = 0; userId < USERS; userId++)
+            assertEquals(expected.get(userId), ledger.balance(userId));
+        BalanceLedger replayed = BalanceLedger.logged(16, this.directory, 2, false);
+        for(int userId = 0; userId < USERS; userId++)
+            assertEquals(expected.get(userId), replayed.balance(userId));
+        replayed.close();
+    }
+
+}
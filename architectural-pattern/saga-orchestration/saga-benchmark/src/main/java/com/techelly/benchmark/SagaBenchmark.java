@@ -0,0 +1,190 @@
+package com.techelly.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.techelly.codec.SagaBinaryCodec;
+import com.techelly.codec.SagaBinaryMessageConverter;
+import com.techelly.dto.OrchestratorRequestDTO;
+import com.techelly.dto.OrchestratorResponseDTO;
+import com.techelly.enums.OrderStatus;
+import com.techelly.saga.OrchestratorApplication;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.convert.ApplicationConversionService;
+import org.springframework.cloud.stream.binder.test.InputDestination;
+import org.springframework.cloud.stream.binder.test.OutputDestination;
+import org.springframework.cloud.stream.binder.test.TestChannelBinderConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Load test for the orchestrator, without kafka or the downstream services.
+ * The orchestrator runs with the in-memory test binder against in-process stand-ins of the payment and inventory
+ * endpoints. Orders are offered at a fixed rate, independent of how fast sagas finish, so queueing shows up in the
+ * latencies instead of lowering the rate.
+ *
+ * All options are passed as --key=value. The benchmark.* ones are listed below, everything else goes to the
+ * orchestrator, e.g. --saga.deadline=500ms or --service.batch.max-size=128.
+ *
+ *   java -jar saga-benchmark/target/saga-benchmark-0.0.1-SNAPSHOT.jar --benchmark.rate=2000 --benchmark.duration=60s
+ */
+public class SagaBenchmark {
+
+    private static final String INPUT = "order-created";
+    private static final String OUTPUT = "order-updated";
+
+    public static void main(String[] args) throws Exception {
+        SimpleCommandLinePropertySource options = new SimpleCommandLinePropertySource(args);
+        int rate = option(options, "benchmark.rate", Integer.class, 1000);
+        Duration duration = option(options, "benchmark.duration", Duration.class, Duration.ofSeconds(30));
+        Duration warmup = option(options, "benchmark.warmup", Duration.class, Duration.ofSeconds(5));
+        Duration drainTimeout = option(options, "benchmark.drain-timeout", Duration.class, Duration.ofSeconds(30));
+        Duration paymentLatency = option(options, "benchmark.payment.latency", Duration.class, Duration.ofMillis(1));
+        double paymentFailureRate = option(options, "benchmark.payment.failure-rate", Double.class, 0.05);
+        Duration inventoryLatency = option(options, "benchmark.inventory.latency", Duration.class, Duration.ofMillis(1));
+        double inventoryFailureRate = option(options, "benchmark.inventory.failure-rate", Double.class, 0.05);
+        File output = new File(option(options, "benchmark.output", String.class, "saga-benchmark.json"));
+
+        ObjectMapper mapper = new ObjectMapper();
+        Path journal = Files.createTempDirectory("saga-benchmark-journal");
+        StandInServer standIns = new StandInServer(mapper,
+                new StandInServer.Behaviour(paymentLatency, paymentFailureRate),
+                new StandInServer.Behaviour(inventoryLatency, inventoryFailureRate));
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(
+                TestChannelBinderConfiguration.getCompleteConfiguration(OrchestratorApplication.class))
+                .web(WebApplicationType.NONE)
+                // these have to win over the orchestrator's application.yaml
+                .initializers(ctx -> ctx.getEnvironment().getPropertySources().addFirst(new MapPropertySource("benchmark", Map.of(
+                        "service.endpoints.payment", standIns.getBaseUrl(),
+                        "service.endpoints.inventory", standIns.getBaseUrl(),
+                        "saga.journal.directory", journal.toString(),
+                        "spring.cloud.stream.default-binder", "integration"))))
+                .run(args);
+        try {
+            int total = (int) (rate * duration.toMillis() / 1000);
+            int warmupCount = (int) (rate * warmup.toMillis() / 1000);
+            BenchmarkReport report = new Run(context.getBean(InputDestination.class), context.getBean(OutputDestination.class))
+                    .execute(rate, total, warmupCount, drainTimeout);
+            Map<String, Object> settings = report.getSettings();
+            settings.put("rate", rate);
+            settings.put("duration", duration.toString());
+            settings.put("warmup", warmup.toString());
+            settings.put("paymentLatency", paymentLatency.toString());
+            settings.put("paymentFailureRate", paymentFailureRate);
+            settings.put("inventoryLatency", inventoryLatency.toString());
+            settings.put("inventoryFailureRate", inventoryFailureRate);
+            settings.put("sagaDeadline", context.getEnvironment().getProperty("saga.deadline"));
+            settings.put("batchMaxSize", context.getEnvironment().getProperty("service.batch.max-size"));
+            mapper.enable(SerializationFeature.INDENT_OUTPUT).writeValue(output, report);
+            System.out.println(mapper.writeValueAsString(report));
+        } finally {
+            context.close();
+            standIns.dispose();
+            FileSystemUtils.deleteRecursively(journal);
+        }
+    }
+
+    private static <T> T option(SimpleCommandLinePropertySource options, String name, Class<T> type, T defaultValue) {
+        String value = options.getProperty(name);
+        return value == null ? defaultValue : ApplicationConversionService.getSharedInstance().convert(value, type);
+    }
+
+    // one pass over the orders. the sender thread offers them at the rate, the calling thread collects the results
+    private static class Run {
+
+        private final InputDestination input;
+        private final OutputDestination output;
+        private final Map<UUID, Long> started = new ConcurrentHashMap<>();
+        private volatile long measureFrom = Long.MAX_VALUE;
+
+        private Run(InputDestination input, OutputDestination output) {
+            this.input = input;
+            this.output = output;
+        }
+
+        private BenchmarkReport execute(int rate, int total, int warmupCount, Duration drainTimeout) throws InterruptedException {
+            Thread sender = new Thread(() -> this.send(rate, total, warmupCount), "saga-benchmark-sender");
+            long start = System.nanoTime();
+            sender.start();
+
+            long[] latencies = new long[total];
+            int measured = 0;
+            long completed = 0;
+            long cancelled = 0;
+            long lastReceived = start;
+            long idleSince = System.nanoTime();
+            while(completed + cancelled < total && System.nanoTime() - idleSince < drainTimeout.toNanos()){
+                Message<byte[]> message = this.output.receive(100, OUTPUT);
+                if(message == null)
+                    continue;
+                lastReceived = idleSince = System.nanoTime();
+                OrchestratorResponseDTO responseDTO = SagaBinaryCodec.decode(message.getPayload(), OrchestratorResponseDTO.class);
+                Long sentAt = this.started.remove(responseDTO.getOrderId());
+                if(responseDTO.getStatus() == OrderStatus.ORDER_COMPLETED)
+                    completed++;
+                else
+                    cancelled++;
+                if(sentAt != null && sentAt >= this.measureFrom)
+                    latencies[measured++] = lastReceived - sentAt;
+            }
+            sender.join();
+
+            BenchmarkReport report = new BenchmarkReport();
+            report.setSent(total);
+            report.setCompleted(completed);
+            report.setCancelled(cancelled);
+            report.setLost(total - completed - cancelled);
+            report.setOfferedRate(rate);
+            double measuredSeconds = (lastReceived - this.measureFrom) / 1e9;
+            report.setThroughput(measuredSeconds > 0 ? measured / measuredSeconds : 0);
+            report.setCompensationRate(completed + cancelled == 0 ? 0 : (double) cancelled / (completed + cancelled));
+            report.setLatencies(latencies, measured);
+            return report;
+        }
+
+        private void send(int rate, int total, int warmupCount) {
+            long start = System.nanoTime();
+            int sent = 0;
+            while(sent < total){
+                long due = Math.min(total, (System.nanoTime() - start) * rate / 1_000_000_000L);
+                for(; sent < due; sent++){
+                    if(sent == warmupCount)
+                        this.measureFrom = System.nanoTime();
+                    this.sendOrder();
+                }
+                LockSupport.parkNanos(50_000);
+            }
+        }
+
+        private void sendOrder() {
+            OrchestratorRequestDTO requestDTO = new OrchestratorRequestDTO();
+            requestDTO.setOrderId(UUID.randomUUID());
+            requestDTO.setUserId(ThreadLocalRandom.current().nextInt(1, 4));
+            requestDTO.setProductId(ThreadLocalRandom.current().nextInt(1, 4));
+            requestDTO.setAmount(100d);
+            Message<byte[]> message = MessageBuilder.withPayload(SagaBinaryCodec.encode(requestDTO))
+                    .setHeader(MessageHeaders.CONTENT_TYPE, SagaBinaryMessageConverter.MIME_TYPE.toString())
+                    .build();
+            this.started.put(requestDTO.getOrderId(), System.nanoTime());
+            this.input.send(message, INPUT);
+        }
+
+    }
+
+}
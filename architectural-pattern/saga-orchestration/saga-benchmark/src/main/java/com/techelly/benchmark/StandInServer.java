@@ -0,0 +1,141 @@
+package com.techelly.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.techelly.dto.InventoryRequestDTO;
+import com.techelly.dto.InventoryResponseDTO;
+import com.techelly.dto.PaymentRequestDTO;
+import com.techelly.dto.PaymentResponseDTO;
+import com.techelly.enums.InventoryStatus;
+import com.techelly.enums.PaymentStatus;
+
+import org.reactivestreams.Publisher;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+ * In-process stand-in for the payment and inventory endpoints the orchestrator calls.
+ * Each endpoint answers after a fixed latency and rejects a share of the requests, which drives compensations.
+ */
+public class StandInServer implements Disposable {
+
+    private final ObjectMapper mapper;
+    private final Behaviour payment;
+    private final Behaviour inventory;
+    private final DisposableServer server;
+
+    public StandInServer(ObjectMapper mapper, Behaviour payment, Behaviour inventory) {
+        this.mapper = mapper;
+        this.payment = payment;
+        this.inventory = inventory;
+        this.server = HttpServer.create()
+                .host("localhost")
+                .port(0)
+                .protocol(HttpProtocol.HTTP11, HttpProtocol.H2C)
+                .route(routes -> routes
+                        .post("/payment/debit/batch", (req, res) -> this.batch(req, res, PaymentRequestDTO[].class, this::debit, this.payment))
+                        .post("/payment/credit", (req, res) -> this.acknowledge(req, res, this.payment))
+                        .post("/inventory/deduct/batch", (req, res) -> this.batch(req, res, InventoryRequestDTO[].class, this::deduct, this.inventory))
+                        .post("/inventory/add", (req, res) -> this.acknowledge(req, res, this.inventory)))
+                .bindNow();
+    }
+
+    public String getBaseUrl() {
+        return "http://localhost:" + this.server.port();
+    }
+
+    private <T, R> Publisher<Void> batch(HttpServerRequest request, HttpServerResponse response, Class<T[]> type,
+                                         Function<T, R> handler, Behaviour behaviour) {
+        Mono<String> body = request.receive()
+                .aggregate()
+                .asString()
+                .map(json -> {
+                    List<R> results = Arrays.stream(this.read(json, type))
+                            .map(handler)
+                            .collect(Collectors.toList());
+                    return this.write(results);
+                })
+                .delayElement(behaviour.latency);
+        return response.header("Content-Type", "application/json").sendString(body);
+    }
+
+    private Publisher<Void> acknowledge(HttpServerRequest request, HttpServerResponse response, Behaviour behaviour) {
+        return request.receive()
+                .then(Mono.delay(behaviour.latency))
+                .then(response.send());
+    }
+
+    private PaymentResponseDTO debit(PaymentRequestDTO requestDTO) {
+        PaymentResponseDTO responseDTO = new PaymentResponseDTO();
+        responseDTO.setUserId(requestDTO.getUserId());
+        responseDTO.setOrderId(requestDTO.getOrderId());
+        responseDTO.setAmount(requestDTO.getAmount());
+        responseDTO.setStatus(this.payment.fails() ? PaymentStatus.PAYMENT_REJECTED : PaymentStatus.PAYMENT_APPROVED);
+        return responseDTO;
+    }
+
+    private InventoryResponseDTO deduct(InventoryRequestDTO requestDTO) {
+        InventoryResponseDTO responseDTO = new InventoryResponseDTO();
+        responseDTO.setUserId(requestDTO.getUserId());
+        responseDTO.setOrderId(requestDTO.getOrderId());
+        responseDTO.setProductId(requestDTO.getProductId());
+        responseDTO.setStatus(this.inventory.fails() ? InventoryStatus.UNAVAILABLE : InventoryStatus.AVAILABLE);
+        return responseDTO;
+    }
+
+    private <T> T read(String json, Class<T> type) {
+        try {
+            return this.mapper.readValue(json, type);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private String write(Object value) {
+        try {
+            return this.mapper.writeValueAsString(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void dispose() {
+        this.server.disposeNow();
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return this.server.isDisposed();
+    }
+
+    public static class Behaviour {
+
+        private final Duration latency;
+        private final double failureRate;
+
+        public Behaviour(Duration latency, double failureRate) {
+            this.latency = latency;
+            this.failureRate = failureRate;
+        }
+
+        private boolean fails() {
+            return ThreadLocalRandom.current().nextDouble() < this.failureRate;
+        }
+
+    }
+
+}